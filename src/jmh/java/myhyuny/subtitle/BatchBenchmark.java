@@ -0,0 +1,112 @@
+package myhyuny.subtitle;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Batch conversion of many small files on a simulated network file system, where every read and
+ * write waits {@code latency} milliseconds. Compares the thread pools with virtual threads
+ * ({@code mode=virtual} needs JDK 21). The {@code files} counter reports files/s.
+ *
+ * @author Hyunmin Kang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BatchBenchmark {
+
+    private static final String MODE_PLATFORM = "platform";
+    private static final String MODE_VIRTUAL = "virtual";
+
+    @Param({MODE_PLATFORM, MODE_VIRTUAL})
+    public String mode;
+
+    @Param({"0", "5", "20"})
+    public int latency;
+
+    @Param({"1000"})
+    public int files;
+
+    private Path dir;
+    private List<File> inputs;
+    private BatchConverter converter;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long files;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (MODE_VIRTUAL.equals(mode) && !BatchConverter.isVirtualThreadsSupported()) {
+            throw new IllegalStateException("Virtual threads need JDK 21 or later.");
+        }
+
+        Corpus corpus = Corpus.generate(Corpus.FORMAT_SUB_RIP, Corpus.VARIANT_LATIN, UTF_8, 16 * 1024);
+        dir = Files.createTempDirectory("subtitle-bench");
+        inputs = new ArrayList<>(files);
+        for (int i = 0; i < files; i++) {
+            inputs.add(corpus.write(dir, Corpus.FORMAT_SUB_RIP).toFile());
+        }
+
+        long nanos = MILLISECONDS.toNanos(latency);
+        converter = new BatchConverter() {
+            @Override
+            byte[] read(File file) throws IOException {
+                LockSupport.parkNanos(nanos);
+                return super.read(file);
+            }
+
+            @Override
+            void write(File file, ByteArrayOutputStream rendered) throws IOException {
+                LockSupport.parkNanos(nanos);
+                super.write(file, rendered);
+            }
+        }.setInputCharset(UTF_8).setOutputCharset(UTF_8).setVirtualThreads(MODE_VIRTUAL.equals(mode));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (File f : dir.toFile().listFiles()) {
+            Files.delete(f.toPath());
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public BatchReport convert(Counters counters) {
+        BatchReport report = converter.convert(inputs);
+        counters.files += report.getConverted();
+        return report;
+    }
+
+}
@@ -0,0 +1,92 @@
+package myhyuny.subtitle;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * End-to-end conversion of one file, read, parse, render, encode and write.
+ * The {@code cues} and {@code bytes} counters report cues/s and input bytes/s.
+ *
+ * @author Hyunmin Kang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ConvertBenchmark {
+
+    @Param({Corpus.FORMAT_SUB_RIP, Corpus.FORMAT_SAMI})
+    public String format;
+
+    @Param({Corpus.VARIANT_LATIN, Corpus.VARIANT_CJK, Corpus.VARIANT_MULTILINE, Corpus.VARIANT_TAGS})
+    public String variant;
+
+    @Param({"UTF-8", "x-windows-949", "UTF-16LE"})
+    public String charset;
+
+    @Param({"1024", "1048576", "104857600"})
+    public long size;
+
+    private Charset inputCharset;
+    private Path dir;
+    private File file;
+    private int cues;
+    private int bytes;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long cues;
+        public long bytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        inputCharset = Charset.forName(charset);
+        Corpus corpus = Corpus.generate(format, variant, inputCharset, size);
+        cues = corpus.cues;
+        bytes = corpus.bytes.length;
+
+        dir = Files.createTempDirectory("subtitle-bench");
+        file = corpus.write(dir, format).toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (File f : dir.toFile().listFiles()) {
+            Files.delete(f.toPath());
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public File convert(Counters counters) {
+        File out = new Converter(file).setInputCharset(inputCharset).setOutputCharset(inputCharset).write();
+        counters.cues += cues;
+        counters.bytes += bytes;
+        return out;
+    }
+
+}
@@ -0,0 +1,165 @@
+package myhyuny.subtitle;
+
+import static java.nio.charset.StandardCharsets.UTF_16LE;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Synthetic SubRip and SAMI files for the benchmarks.
+ *
+ * @author Hyunmin Kang
+ */
+final class Corpus {
+
+    static final String FORMAT_SAMI = "smi";
+    static final String FORMAT_SUB_RIP = "srt";
+
+    static final String VARIANT_LATIN = "latin";
+    static final String VARIANT_CJK = "cjk";
+    static final String VARIANT_MULTILINE = "multiline";
+    static final String VARIANT_TAGS = "tags";
+    /**
+     * SAMI of Korean and English classes, one or both at a sync in either order. SubRip as latin.
+     */
+    static final String VARIANT_TRACKS = "tracks";
+
+    private static final String[] LATIN = {
+        "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "where", "are", "you", "going",
+        "tonight", "I", "told", "you", "so", "never", "again", "please", "wait", "here", "(laughs)", "okay",
+    };
+    private static final String[] CJK = {
+        "안녕하세요", "자막", "변환기", "오늘", "내일", "어디", "가요", "정말", "고마워요", "漢字", "사람", "시간",
+        "영상", "그래서", "하지만", "괜찮아", "여기", "기다려", "（웃음）", "알겠어",
+    };
+
+    private static final int SAMPLE_SIZE = 16 * 1024;
+
+    final String text;
+    final byte[] bytes;
+    final int cues;
+
+    private Corpus(String text, Charset charset, int cues) {
+        this.text = text;
+        this.bytes = text.getBytes(charset);
+        this.cues = cues;
+    }
+
+    /**
+     * @param size approximate size of the encoded file in bytes
+     */
+    static Corpus generate(String format, String variant, Charset charset, long size) {
+        String sample = generate(format, variant, charset, SAMPLE_SIZE, 1.f).text;
+        return generate(format, variant, charset, size, (float) sample.getBytes(charset).length / sample.length());
+    }
+
+    private static Corpus generate(String format, String variant, Charset charset, long size, float ratio) {
+        Random random = new Random(size ^ variant.hashCode());
+        StringBuilder builder = new StringBuilder((int) Math.min(size, Integer.MAX_VALUE - 8));
+        String delimiter = "\r\n";
+
+        if (UTF_16LE.equals(charset)) {
+            builder.append('\uFEFF');
+        }
+
+        boolean sami = FORMAT_SAMI.equals(format);
+        if (sami) {
+            builder.append("<SAMI>").append(delimiter).append("<HEAD>").append(delimiter)
+                .append("<STYLE><!--").append(delimiter).append("P { text-align: center; }").append(delimiter)
+                .append(".KRCC { Name: Korean; lang: ko-KR; }").append(delimiter)
+                .append(VARIANT_TRACKS.equals(variant) ? ".ENCC { Name: English; lang: en-US; }" + delimiter : "")
+                .append("--></STYLE>").append(delimiter).append("</HEAD>").append(delimiter)
+                .append("<BODY>").append(delimiter);
+        }
+
+        int cues = 0;
+        long time = 0L;
+        while (builder.length() * ratio < size) {
+            long start = time + random.nextInt(2000);
+            long end = start + 500 + random.nextInt(4000);
+            time = end;
+            cues++;
+
+            if (sami && VARIANT_TRACKS.equals(variant)) {
+                builder.append("<SYNC Start=").append(start).append('>');
+                int classes = 1 + random.nextInt(3);
+                boolean english = random.nextBoolean();
+                for (int i = 0; i < 2; i++, english = !english) {
+                    if ((classes & (english ? 2 : 1)) != 0) {
+                        builder.append(english ? "<P Class=ENCC>" : "<P Class=KRCC>");
+                        words(builder, english ? LATIN : CJK, random, 2 + random.nextInt(5));
+                        builder.append(delimiter);
+                    }
+                }
+                builder.append("<SYNC Start=").append(end).append("><P Class=KRCC>&nbsp;<P Class=ENCC>&nbsp;")
+                    .append(delimiter);
+            } else if (sami) {
+                builder.append("<SYNC Start=").append(start).append("><P Class=KRCC>");
+                text(builder, variant, random, "<br>" + delimiter);
+                builder.append(delimiter).append("<SYNC Start=").append(end).append("><P Class=KRCC>&nbsp;").append(delimiter);
+            } else {
+                builder.append(cues).append(delimiter);
+                SubRipTime.append(builder, start).append(" --> ");
+                SubRipTime.append(builder, end).append(delimiter);
+                text(builder, variant, random, delimiter);
+                builder.append(delimiter).append(delimiter);
+            }
+        }
+
+        if (sami) {
+            builder.append("</BODY>").append(delimiter).append("</SAMI>").append(delimiter);
+        }
+
+        return new Corpus(builder.toString(), charset, cues);
+    }
+
+    Path write(Path dir, String format) throws IOException {
+        Path path = Files.createTempFile(dir, "corpus", '.' + format);
+        try (OutputStream out = Files.newOutputStream(path)) {
+            out.write(bytes);
+        }
+        return path;
+    }
+
+    private static void text(StringBuilder builder, String variant, Random random, String newLine) {
+        switch (variant) {
+            case VARIANT_CJK:
+                words(builder, CJK, random, 2 + random.nextInt(5));
+                break;
+            case VARIANT_MULTILINE:
+                for (int i = 0, lines = 2 + random.nextInt(3); i < lines; i++) {
+                    if (i > 0) {
+                        builder.append(newLine);
+                    }
+                    words(builder, random.nextBoolean() ? LATIN : CJK, random, 2 + random.nextInt(5));
+                }
+                break;
+            case VARIANT_TAGS:
+                builder.append("<font color=\"#ffff00\">");
+                words(builder, LATIN, random, 1 + random.nextInt(3));
+                builder.append("</font>&nbsp;<i>");
+                words(builder, CJK, random, 1 + random.nextInt(3));
+                builder.append("</i>").append(newLine).append("<b>  ");
+                words(builder, LATIN, random, 1 + random.nextInt(3));
+                builder.append(" </b>");
+                break;
+            case VARIANT_LATIN:
+            default:
+                words(builder, LATIN, random, 3 + random.nextInt(6));
+        }
+    }
+
+    private static void words(StringBuilder builder, String[] words, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(words[random.nextInt(words.length)]);
+        }
+    }
+
+}
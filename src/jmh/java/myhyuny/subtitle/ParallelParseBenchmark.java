@@ -0,0 +1,108 @@
+package myhyuny.subtitle;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.text.ParseException;
+
+/**
+ * Parse time of one large file cut into {@code pieces} parsed at the same time, from 1 (the usual
+ * single reader) up to the cores of the machine. The text is decoded beforehand, so only the
+ * parse and the join of the pieces are measured. The setup checks that the pieces give the cues of
+ * the single reader, in the same order.
+ *
+ * @author Hyunmin Kang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ParallelParseBenchmark {
+
+    @Param({Corpus.FORMAT_SUB_RIP, Corpus.FORMAT_SAMI})
+    public String format;
+
+    @Param({Corpus.VARIANT_LATIN, Corpus.VARIANT_TRACKS})
+    public String variant;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int pieces;
+
+    @Param({"104857600"})
+    public long size;
+
+    private char[] text;
+    private int type;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ParseException {
+        Corpus corpus = Corpus.generate(format, variant, UTF_8, size);
+        text = new String(corpus.bytes, UTF_8).toCharArray();
+        type = Corpus.FORMAT_SAMI.equals(format) ? Subtitle.TYPE_SAMI : Subtitle.TYPE_SUB_RIP;
+        if (pieces > 1) {
+            CueTable table = ParallelParser.parse(CharBuffer.wrap(text), type, 0L, pieces);
+            if (table == null) {
+                throw new IllegalStateException("The corpus is parsed on one thread.");
+            }
+            int differs = differs(table, read());
+            if (differs >= 0) {
+                throw new IllegalStateException("The pieces differ from one read at cue " + differs + '.');
+            }
+        }
+    }
+
+    @Benchmark
+    public CueTable parse() throws IOException, ParseException {
+        if (pieces > 1) {
+            return ParallelParser.parse(CharBuffer.wrap(text), type, 0L, pieces);
+        }
+        return read();
+    }
+
+    private CueTable read() throws IOException, ParseException {
+        CueTable table = new CueTable();
+        try (SubtitleReader reader = type == Subtitle.TYPE_SAMI
+            ? new SamiReader(new CharArrayReader(text), 0L)
+            : new SubRipReader(new CharArrayReader(text), 0L)) {
+            for (Subtitle subtitle; (subtitle = reader.read()) != null; ) {
+                table.add(subtitle);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return the first cue that differs in time, text or track, or -1
+     */
+    private static int differs(CueTable a, CueTable b) {
+        for (int i = 0, size = Math.min(a.size(), b.size()); i < size; i++) {
+            Subtitle x = a.get(i);
+            Subtitle y = b.get(i);
+            if (x.getRawStart() != y.getRawStart() || x.getRawEnd() != y.getRawEnd() || !x.getText().equals(y.getText())
+                || (x.getTrack() == null ? y.getTrack() != null : y.getTrack() == null
+                || !x.getTrack().getClassName().equals(y.getTrack().getClassName()))) {
+                return i;
+            }
+        }
+        return a.size() == b.size() ? -1 : Math.min(a.size(), b.size());
+    }
+
+}
@@ -0,0 +1,80 @@
+package myhyuny.subtitle;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SAMI to plain text normalization, {@link SamiText} against the former regular expressions.
+ *
+ * @author Hyunmin Kang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PlainBenchmark {
+
+    @Param({Corpus.VARIANT_LATIN, Corpus.VARIANT_CJK, Corpus.VARIANT_MULTILINE, Corpus.VARIANT_TAGS})
+    public String variant;
+
+    @Param({"1048576"})
+    public long size;
+
+    private final List<Subtitle> subtitles = new ArrayList<>();
+    private final StringBuilder builder = new StringBuilder();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Corpus corpus = Corpus.generate(Corpus.FORMAT_SAMI, variant, UTF_8, size);
+        try (SamiReader reader = new SamiReader(new InputStreamReader(new ByteArrayInputStream(corpus.bytes), UTF_8), 0L)) {
+            for (Subtitle subtitle; (subtitle = reader.read()) != null; ) {
+                subtitles.add(subtitle);
+            }
+        }
+    }
+
+    @Benchmark
+    public void scanner(Blackhole blackhole) {
+        for (Subtitle subtitle : subtitles) {
+            blackhole.consume(subtitle.getPlain());
+        }
+    }
+
+    @Benchmark
+    public void scannerReusedBuffer(Blackhole blackhole) {
+        for (Subtitle subtitle : subtitles) {
+            builder.setLength(0);
+            blackhole.consume(subtitle.appendPlain(builder).length());
+        }
+    }
+
+    @Benchmark
+    public void regex(Blackhole blackhole) {
+        for (Subtitle subtitle : subtitles) {
+            blackhole.consume(subtitle.getPlainRegex());
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package myhyuny.subtitle;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+
+/**
+ * The former regular expression SubRip parser, to compare with {@code StageBenchmark.parse} of the
+ * same SubRip corpus. SAMI has no such parser.
+ *
+ * @author Hyunmin Kang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RegexParseBenchmark {
+
+    @Param({Corpus.VARIANT_LATIN, Corpus.VARIANT_CJK, Corpus.VARIANT_MULTILINE, Corpus.VARIANT_TAGS})
+    public String variant;
+
+    @Param({"UTF-8", "x-windows-949", "UTF-16LE"})
+    public String charset;
+
+    @Param({"1024", "1048576", "104857600"})
+    public long size;
+
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Charset inputCharset = Charset.forName(charset);
+        text = new String(Corpus.generate(Corpus.FORMAT_SUB_RIP, variant, inputCharset, size).bytes, inputCharset);
+    }
+
+    @Benchmark
+    public void parseRegex(Blackhole blackhole) throws IOException, ParseException {
+        StageBenchmark.parse(blackhole, new SubRipRegexReader(new StringReader(text), 0L));
+    }
+
+}
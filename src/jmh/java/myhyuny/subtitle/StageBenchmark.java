@@ -0,0 +1,131 @@
+package myhyuny.subtitle;
+
+import static java.nio.charset.CodingErrorAction.REPLACE;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static myhyuny.subtitle.Subtitle.TYPE_SAMI;
+import static myhyuny.subtitle.Subtitle.TYPE_SUB_RIP;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+/**
+ * Per-stage benchmarks. SubRip and SAMI are split into cues and parsed in one streaming pass,
+ * so those two stages are measured together as {@code parse}. The former SubRip regex parser is
+ * in {@link RegexParseBenchmark}.
+ *
+ * @author Hyunmin Kang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StageBenchmark {
+
+    @Param({Corpus.FORMAT_SUB_RIP, Corpus.FORMAT_SAMI})
+    public String format;
+
+    @Param({Corpus.VARIANT_LATIN, Corpus.VARIANT_CJK, Corpus.VARIANT_MULTILINE, Corpus.VARIANT_TAGS})
+    public String variant;
+
+    @Param({"UTF-8", "x-windows-949", "UTF-16LE"})
+    public String charset;
+
+    @Param({"1024", "1048576", "104857600"})
+    public long size;
+
+    private Charset inputCharset;
+    private Path dir;
+    private byte[] bytes;
+    private String text;
+    private String rendered;
+    private Converter converter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        inputCharset = Charset.forName(charset);
+        Corpus corpus = Corpus.generate(format, variant, inputCharset, size);
+        bytes = corpus.bytes;
+        text = new String(bytes, inputCharset);
+
+        dir = Files.createTempDirectory("subtitle-bench");
+        File file = corpus.write(dir, format).toFile();
+        converter = new Converter(file).setInputCharset(inputCharset).setOutputCharset(inputCharset).load();
+        rendered = render();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (File file : dir.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public CharBuffer decode() throws CharacterCodingException {
+        return inputCharset.newDecoder().onMalformedInput(REPLACE).onUnmappableCharacter(REPLACE)
+            .decode(ByteBuffer.wrap(bytes));
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws IOException, ParseException {
+        parse(blackhole, Corpus.FORMAT_SAMI.equals(format)
+            ? new SamiReader(new StringReader(text), 0L)
+            : new SubRipReader(new StringReader(text), 0L));
+    }
+
+    @Benchmark
+    public String render() throws IOException {
+        StringWriter writer = new StringWriter(rendered == null ? bytes.length : rendered.length());
+        try (SubtitleWriter w = converter.newWriter(writer, Corpus.FORMAT_SAMI.equals(format) ? TYPE_SUB_RIP : TYPE_SAMI)) {
+            converter.render(w);
+        }
+        return writer.toString();
+    }
+
+    @Benchmark
+    public ByteBuffer encode() throws CharacterCodingException {
+        return inputCharset.newEncoder().onMalformedInput(REPLACE).onUnmappableCharacter(REPLACE)
+            .encode(CharBuffer.wrap(rendered));
+    }
+
+    @Benchmark
+    public File write() {
+        return Corpus.FORMAT_SAMI.equals(format) ? converter.writeSubRip() : converter.writeSami();
+    }
+
+    static void parse(Blackhole blackhole, SubtitleReader reader) throws IOException, ParseException {
+        try (SubtitleReader r = reader) {
+            for (Subtitle subtitle; (subtitle = r.read()) != null; ) {
+                blackhole.consume(subtitle);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package myhyuny.subtitle;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time from starting a single file conversion to its first line of output: a fresh JVM
+ * ({@code cold}), a fresh JVM with the archive of {@code gradle cds} ({@code cds}) and a request
+ * to a running {@code --server} ({@code daemon}). Runs {@code sc.jar} from the {@code subtitle.jar}
+ * property, {@code build/libs/sc.jar} by default.
+ *
+ * @author Hyunmin Kang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark {
+
+    private static final String MODE_COLD = "cold";
+    private static final String MODE_CDS = "cds";
+    private static final String MODE_DAEMON = "daemon";
+
+    @Param({MODE_COLD, MODE_CDS, MODE_DAEMON})
+    public String mode;
+
+    private final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    private File jar;
+    private File archive;
+    private Path dir;
+    private File file;
+    private Process server;
+    private int port;
+    private Process process;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        jar = new File(System.getProperty("subtitle.jar", "build/libs/sc.jar")).getAbsoluteFile();
+        if (!jar.isFile()) {
+            throw new IllegalStateException("Build the jar first: " + jar);
+        }
+        archive = new File(jar.getParentFile(), "sc.jsa");
+        if (MODE_CDS.equals(mode) && !archive.isFile()) {
+            throw new IllegalStateException("Run gradle cds first: " + archive);
+        }
+
+        dir = Files.createTempDirectory("subtitle-bench");
+        file = Corpus.generate(Corpus.FORMAT_SUB_RIP, Corpus.VARIANT_CJK, UTF_8, 4096)
+            .write(dir, Corpus.FORMAT_SUB_RIP).toFile();
+
+        if (MODE_DAEMON.equals(mode)) {
+            server = new ProcessBuilder(java, "-jar", jar.getPath(), "--server", "0").redirectErrorStream(true).start();
+            String line = firstLine(server);
+            if (line == null || !line.startsWith("Listening on localhost:")) {
+                server.destroy();
+                throw new IllegalStateException("Server did not start: " + line);
+            }
+            port = Integer.parseInt(line.substring(line.lastIndexOf(':') + 1));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        if (server != null) {
+            server.destroy();
+            server.waitFor();
+        }
+        for (File f : dir.toFile().listFiles()) {
+            Files.delete(f.toPath());
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * The process exits after the measurement, see {@link #exit()}.
+     */
+    @Benchmark
+    public String firstOutput() throws IOException {
+        if (MODE_DAEMON.equals(mode)) {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                OutputStream out = socket.getOutputStream();
+                out.write(("CONVERT " + file.getPath() + "\n\n").getBytes(UTF_8));
+                out.flush();
+                return new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8)).readLine();
+            }
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        if (MODE_CDS.equals(mode)) {
+            command.add("-XX:SharedArchiveFile=" + archive.getPath());
+        }
+        command.add("-jar");
+        command.add(jar.getPath());
+        command.add(file.getPath());
+        process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        return firstLine(process);
+    }
+
+    @TearDown(Level.Invocation)
+    public void exit() throws InterruptedException {
+        if (process != null) {
+            process.waitFor();
+            process = null;
+        }
+    }
+
+    private static String firstLine(Process process) throws IOException {
+        return new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8)).readLine();
+    }
+
+}
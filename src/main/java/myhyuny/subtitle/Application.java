@@ -1,10 +1,13 @@
 package myhyuny.subtitle;
 
 import static java.util.Arrays.stream;
-import static myhyuny.subtitle.Converter.PATTERN_FILE_EXTENSION;
+import static java.util.stream.Collectors.toList;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Paths;
+import java.text.ParseException;
 
 /**
  * SubtitleConverter
@@ -14,7 +17,7 @@ import java.lang.reflect.InvocationTargetException;
 public class Application {
 
     public static void main(String[] args) {
-        if (args.length < 1) {
+        if (args.length < 1 && !Boolean.getBoolean("java.awt.headless")) {
             try {
                 Class<?> c = Class.forName("myhyuny.subtitle.MainFrame");
                 c.getMethod("setVisible", boolean.class).invoke(c.getConstructor().newInstance(), true);
@@ -22,25 +25,166 @@ public class Application {
                 ClassNotFoundException | InstantiationException | IllegalAccessException |
                 NoSuchMethodException | InvocationTargetException ignore
             ) {
-                System.out.println("Usage: java -jar sc.jar [files...]");
-                System.out.println();
+                usage();
             }
             return;
         }
 
+        // The command line never opens a window, keep AWT from initializing.
+        System.setProperty("java.awt.headless", "true");
+
+        if (args.length < 1) {
+            usage();
+            return;
+        }
+
+        if ("--server".equals(args[0])) {
+            int port = args.length > 1 ? port(args[1]) : ConversionServer.DEFAULT_PORT;
+            if (port < 0) {
+                System.err.println("Port error: " + args[1]);
+                usage();
+                System.exit(1);
+            }
+            serve(port);
+            return;
+        }
+
+        String merge = System.getProperty("subtitle.sami.merge");
+        if (merge != null) {
+            merge(new File(merge), args);
+            return;
+        }
+
+        String manifestPath = System.getProperty("subtitle.manifest");
+        ConversionManifest manifest = null;
+        int status = 0;
         try {
-            stream(args).parallel()
-                .filter(u -> PATTERN_FILE_EXTENSION.matcher(u).find())
-                .map(File::new)
-                .filter(File::isFile)
-                .forEach((file) -> {
-                    File out = new Converter(file).write();
-                    System.out.println(file.getName() + " -> " + out.getName());
-                });
+            if (manifestPath != null) {
+                manifest = ConversionManifest.open(Paths.get(manifestPath));
+            }
+
+            BatchConverter converter = new BatchConverter();
+            String clipFrom = System.getProperty("subtitle.clip.from");
+            String clipTo = System.getProperty("subtitle.clip.to");
+            if (clipFrom != null || clipTo != null) {
+                converter.setClip(clipFrom == null ? 0L : SubRipTime.parseTime(clipFrom), clipTo == null ? Long.MAX_VALUE : SubRipTime.parseTime(clipTo))
+                    .setClipRebase(Boolean.getBoolean("subtitle.clip.rebase"));
+            }
+
+            String retime = System.getProperty("subtitle.retime");
+            if (retime != null) {
+                converter.setRetiming(Retiming.parse(retime));
+            }
+            String align = System.getProperty("subtitle.align");
+            if (align != null) {
+                converter.setReference(new File(align), Boolean.getBoolean("subtitle.align.piecewise"));
+            }
+
+            BatchReport report = converter
+                .setOutputType(outputType(System.getProperty("subtitle.outputType", "")))
+                .setSegmentDuration(Long.getLong("subtitle.vtt.segmentDuration", 0L) * 1000L)
+                .setTrack(System.getProperty("subtitle.sami.track"))
+                .setSplitTracks(Boolean.getBoolean("subtitle.sami.splitTracks"))
+                .setManifest(manifest)
+                .setListener(new BatchConverter.Listener() {
+                    @Override
+                    public void converted(File input, File output) {
+                        System.out.println(input.getName() + " -> " + output.getName());
+                    }
+
+                    @Override
+                    public void aligned(File input, Retiming retiming) {
+                        System.out.println(input.getName() + ": " + retiming);
+                    }
+
+                    @Override
+                    public void failed(File input, RuntimeException e) {
+                        System.err.println(e.getMessage());
+                    }
+                })
+                .convert(stream(args).map(File::new).collect(toList()));
+
             System.out.println();
+            System.out.println(report);
+            if (report.getFailed() > 0) {
+                status = 1;
+            }
+        } catch (IOException e) {
+            System.err.println("Manifest error: " + e.getMessage());
+            status = 1;
+        } catch (ParseException | IllegalArgumentException e) {
+            System.err.println("Time error: " + e.getMessage());
+            status = 1;
         } catch (SubtitleException e) {
             System.err.println(e.getMessage());
-            System.out.println();
+            status = 1;
+        } finally {
+            if (manifest != null) {
+                try {
+                    manifest.close();
+                } catch (IOException e) {
+                    System.err.println("Manifest error: " + e.getMessage());
+                }
+            }
+        }
+
+        try {
+            Metrics.export();
+        } catch (IOException e) {
+            System.err.println("Metrics error: " + e.getMessage());
+            status = 1;
+        }
+
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * @param type extension of a format, anything else for the other format
+     */
+    private static int outputType(String type) {
+        SubtitleFormat format = SubtitleFormats.forExtension(type);
+        return format == null ? 0 : format.getType();
+    }
+
+    /**
+     * Writes the files as the language tracks of one SAMI file.
+     */
+    private static void merge(File output, String[] inputs) {
+        try {
+            Converter.writeSami(output, stream(inputs).map(f -> new Converter(new File(f))).collect(toList()));
+            System.out.println(String.join(", ", inputs) + " -> " + output.getName());
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: java -jar sc.jar [files or directories...]");
+        System.out.println("       java -jar sc.jar --server [port]");
+        System.out.println();
+    }
+
+    /**
+     * @return the port, 0 for any free one, or -1 if {@code value} is not a port
+     */
+    private static int port(String value) {
+        try {
+            int port = Integer.parseInt(value);
+            return port >= 0 && port <= 0xFFFF ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void serve(int port) {
+        try (ConversionServer server = new ConversionServer(port)) {
+            System.out.println("Listening on localhost:" + server.getPort());
+            server.serve();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
             System.exit(1);
         }
     }
@@ -0,0 +1,756 @@
+package myhyuny.subtitle;
+
+import static java.nio.file.Files.newOutputStream;
+import static java.nio.file.Files.readAllBytes;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static myhyuny.subtitle.Converter.PATTERN_FILE_EXTENSION;
+import static myhyuny.subtitle.Subtitle.TYPE_WEB_VTT;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Converts many files with a bounded number of threads. Files are read and written on an I/O pool
+ * and parsed and rendered on a worker pool, while the bytes of files read but not yet written are
+ * kept under a budget so that a large tree never sits in memory at once. A failure is recorded
+ * for its file and the rest of the batch goes on.
+ * <p>
+ * On JDK 21 and later the files can instead run on virtual threads, see {@link #setVirtualThreads(boolean)}.
+ *
+ * @author Hyunmin Kang
+ */
+public class BatchConverter {
+
+    private static final Pattern PATTERN_SEGMENT = Pattern.compile("(.+)-\\d+\\.vtt", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PATTERN_RETIMED = Pattern.compile("(.+)\\.retimed(\\.[^.]+)");
+    private static final Pattern PATTERN_TRACK = Pattern.compile("(.+)\\.[\\w-]+");
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method method;
+        try {
+            method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            method = null;
+        }
+        NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = method;
+    }
+
+    private int workers = Integer.getInteger("subtitle.workers", Runtime.getRuntime().availableProcessors());
+    private int ioThreads = Integer.getInteger("subtitle.ioThreads", 4);
+    private long maxInFlightBytes = Long.getLong("subtitle.maxInFlightBytes", 64L * 1024 * 1024);
+
+    private boolean virtualThreads = Boolean.getBoolean("subtitle.virtualThreads");
+
+    private Charset inputCharset = null;
+    private Charset outputCharset = null;
+    private String lineDelimiter;
+    private long sync;
+    private int outputType;
+    private long segmentDuration;
+    private String track;
+    private boolean splitTracks;
+    private long clipFrom = 0L;
+    private long clipTo = Long.MAX_VALUE;
+    private boolean clipRebase;
+    private Retiming retiming;
+    private File reference;
+    private boolean piecewise;
+    private Converter loadedReference;
+    private ConversionManifest manifest;
+    private CueCache cueCache;
+    private Listener listener = new Listener() {
+    };
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public BatchConverter setWorkers(int workers) {
+        this.workers = workers;
+        return this;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public BatchConverter setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+        return this;
+    }
+
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    /**
+     * Input bytes that may be held between reading and writing. A file larger than the budget
+     * is converted alone.
+     */
+    public BatchConverter setMaxInFlightBytes(long maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes;
+        return this;
+    }
+
+    /**
+     * @return {@code true} on JDK 21 and later
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Runs each file on its own virtual thread, for storage where the time goes to waiting on I/O.
+     * Parsing and rendering are still limited to {@link #getWorkers()} files at a time. Ignored
+     * when {@link #isVirtualThreadsSupported()} is {@code false}.
+     */
+    public BatchConverter setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    public BatchConverter setInputCharset(Charset inputCharset) {
+        this.inputCharset = inputCharset;
+        return this;
+    }
+
+    /**
+     * @param outputCharset output charset, or {@code null} for the {@link Converter} default
+     */
+    public BatchConverter setOutputCharset(Charset outputCharset) {
+        this.outputCharset = outputCharset;
+        return this;
+    }
+
+    public BatchConverter setLineDelimiter(String lineDelimiter) {
+        this.lineDelimiter = lineDelimiter;
+        return this;
+    }
+
+    public BatchConverter setSync(long sync) {
+        this.sync = sync;
+        return this;
+    }
+
+    /**
+     * @param outputType {@link Subtitle#TYPE_SAMI}, {@link Subtitle#TYPE_SUB_RIP}, {@link Subtitle#TYPE_WEB_VTT}
+     *                   or 0 for the other format
+     */
+    public BatchConverter setOutputType(int outputType) {
+        this.outputType = outputType;
+        return this;
+    }
+
+    /**
+     * Writes WebVTT output as HLS segments of this many milliseconds with a playlist, when positive.
+     */
+    public BatchConverter setSegmentDuration(long segmentDuration) {
+        this.segmentDuration = segmentDuration;
+        return this;
+    }
+
+    /**
+     * Writes only this language track of SAMI files with several, see {@link Converter#setTrack(String)}.
+     */
+    public BatchConverter setTrack(String track) {
+        this.track = track;
+        return this;
+    }
+
+    /**
+     * Writes each language track of SAMI files with several to its own file, see
+     * {@link Converter#writeTracks(int)}.
+     */
+    public BatchConverter setSplitTracks(boolean splitTracks) {
+        this.splitTracks = splitTracks;
+        return this;
+    }
+
+    /**
+     * Writes only the cues of a time window, see {@link Converter#setClip(long, long)}.
+     */
+    public BatchConverter setClip(long from, long to) {
+        if (to <= from) {
+            throw new IllegalArgumentException("Empty clip: " + from + '-' + to);
+        }
+        clipFrom = from;
+        clipTo = to;
+        return this;
+    }
+
+    public BatchConverter setClipRebase(boolean clipRebase) {
+        this.clipRebase = clipRebase;
+        return this;
+    }
+
+    /**
+     * Maps the cue times of every file, see {@link Converter#setRetiming(Retiming)}.
+     */
+    public BatchConverter setRetiming(Retiming retiming) {
+        this.retiming = retiming;
+        return this;
+    }
+
+    /**
+     * Aligns every file to a reference for the same video, see {@link Converter#align(Converter, boolean)}.
+     *
+     * @param reference the reference, or {@code null} to keep the times
+     */
+    public BatchConverter setReference(File reference, boolean piecewise) {
+        this.reference = reference;
+        this.piecewise = piecewise;
+        return this;
+    }
+
+    private boolean isReference(File file) {
+        return reference != null && file.getAbsoluteFile().equals(reference.getAbsoluteFile());
+    }
+
+    private boolean isClipped() {
+        return clipFrom != 0L || clipTo != Long.MAX_VALUE;
+    }
+
+    /**
+     * Manifest of earlier runs. Files it shows unchanged are skipped, and conversions are recorded in it.
+     */
+    public BatchConverter setManifest(ConversionManifest manifest) {
+        this.manifest = manifest;
+        return this;
+    }
+
+    /**
+     * Cache of parsed cues, for converting the same files again with other options. Inputs found in
+     * it are not read unless a manifest needs their hash.
+     */
+    public BatchConverter setCueCache(CueCache cueCache) {
+        this.cueCache = cueCache;
+        return this;
+    }
+
+    /**
+     * Listener called from the pool threads as each file finishes.
+     */
+    public BatchConverter setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Converts the files and, recursively, the subtitle files under the directories. Returns after
+     * every file has been written or has failed.
+     *
+     * @throws SubtitleException if the reference cannot be loaded
+     */
+    public BatchReport convert(Iterable<File> inputs) {
+        BatchReport report = new BatchReport();
+        long start = System.nanoTime();
+        // Loaded once, before the pool threads share it.
+        try {
+            loadedReference = reference == null ? null : new Converter(reference).setInputCharset(inputCharset).load();
+        } catch (SubtitleException e) {
+            throw new SubtitleException("Reference error: " + e.getMessage(), e);
+        }
+
+        Batch batch;
+        if (isSingleFile(inputs)) {
+            batch = new Batch(report, null, null, null);
+        } else if (virtualThreads && isVirtualThreadsSupported()) {
+            ExecutorService executor = newVirtualThreadPerTaskExecutor();
+            batch = new Batch(report, executor, executor, new Semaphore(workers));
+        } else {
+            batch = new Batch(report,
+                Executors.newFixedThreadPool(workers, threadFactory("subtitle-worker-")),
+                Executors.newFixedThreadPool(ioThreads, threadFactory("subtitle-io-")),
+                null
+            );
+        }
+        try {
+            for (File input : inputs) {
+                if (input.isDirectory()) {
+                    batch.submitTree(input);
+                } else {
+                    batch.submit(input);
+                }
+            }
+        } finally {
+            batch.phaser.arriveAndAwaitAdvance();
+            if (batch.workerPool != null) {
+                batch.workerPool.shutdown();
+                batch.ioPool.shutdown();
+            }
+            report.setWallTime(System.nanoTime() - start);
+        }
+        return report;
+    }
+
+    /**
+     * A single file is converted on the calling thread, so that a one-file run starts no pools.
+     */
+    private static boolean isSingleFile(Iterable<File> inputs) {
+        if (!(inputs instanceof Collection) || ((Collection<?>) inputs).size() != 1) {
+            return false;
+        }
+        return inputs.iterator().next().isFile();
+    }
+
+    /**
+     * Options that change the output, for the manifest.
+     */
+    private String options() {
+        return "input=" + (inputCharset == null ? "auto" : inputCharset.name())
+            + ",output=" + (outputCharset == null ? "default" : outputCharset.name())
+            + ",lineDelimiter=" + lineDelimiter + ",sync=" + sync + ",type=" + outputType
+            + (segmentDuration > 0L ? ",segments=" + segmentDuration : "")
+            + (track != null ? ",track=" + track : "") + (splitTracks ? ",splitTracks" : "")
+            + (isClipped() ? ",clip=" + clipFrom + '-' + clipTo + (clipRebase ? ",rebase" : "") : "")
+            + (retiming != null ? ",retime=" + retiming : "")
+            + (reference != null ? ",align=" + reference.getAbsolutePath() + (piecewise ? ",piecewise" : "") : "");
+    }
+
+    private Converter newConverter(File file) {
+        Converter converter = new Converter(file)
+            .setInputCharset(inputCharset)
+            .setLineDelimiter(lineDelimiter)
+            .setSync(sync)
+            .setTrack(track)
+            .setClipRebase(clipRebase)
+            .setRetiming(retiming)
+            .setCueCache(cueCache);
+        if (isClipped()) {
+            converter.setClip(clipFrom, clipTo);
+        }
+        if (outputCharset != null) {
+            converter.setOutputCharset(outputCharset);
+        }
+        return converter;
+    }
+
+    /**
+     * Reads the whole input file. Called on an I/O thread.
+     */
+    byte[] read(File file) throws IOException {
+        return readAllBytes(file.toPath());
+    }
+
+    /**
+     * Writes the rendered output file. Called on an I/O thread.
+     */
+    void write(File file, ByteArrayOutputStream rendered) throws IOException {
+        try (OutputStream out = newOutputStream(file.toPath())) {
+            rendered.writeTo(out);
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new SubtitleException("Virtual thread executor error.", e);
+        }
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return (runnable) -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private class Batch {
+
+        private final BatchReport report;
+        private final ExecutorService workerPool;
+        private final ExecutorService ioPool;
+        private final Semaphore cpu;
+        private final ByteBudget budget = new ByteBudget(maxInFlightBytes);
+        private final Phaser phaser = new Phaser(1);
+        private final String options = options();
+
+        /**
+         * @param workerPool worker pool, or {@code null} to convert on the calling thread
+         * @param cpu permits for parsing and rendering, or {@code null} when the worker pool bounds them
+         */
+        Batch(BatchReport report, ExecutorService workerPool, ExecutorService ioPool, Semaphore cpu) {
+            this.report = report;
+            this.workerPool = workerPool;
+            this.ioPool = ioPool;
+            this.cpu = cpu;
+        }
+
+        void submitTree(File dir) {
+            try (Stream<Path> paths = Files.walk(dir.toPath())) {
+                for (Iterator<Path> i = paths.filter(Files::isRegularFile).iterator(); i.hasNext(); ) {
+                    File file = i.next().toFile();
+                    if (!PATTERN_FILE_EXTENSION.matcher(file.getName()).find()) {
+                        continue;
+                    }
+                    if (isOutput(file)) {
+                        report.skipped();
+                        listener.skipped(file);
+                        continue;
+                    }
+                    submit(file);
+                }
+            } catch (IOException | UncheckedIOException e) {
+                failed(dir, new SubtitleException("Directory read error. (" + dir.getName() + ')', e));
+            }
+        }
+
+        /**
+         * Whether a file found in a directory is the output of an earlier run, so that a rerun does
+         * not convert outputs back over their inputs. A file the manifest knows is taken as it says.
+         * Any other file, e.g. left by a run without the manifest, is taken as converted when the
+         * other format of the same name exists, and a WebVTT segment when its playlist does.
+         */
+        private boolean isOutput(File file) {
+            if (manifest != null && manifest.isOutput(file)) {
+                return true;
+            }
+            if (manifest != null && manifest.isInput(file)) {
+                return false;
+            }
+            Matcher retimed = PATTERN_RETIMED.matcher(file.getName());
+            if ((sync != 0L || retiming != null || reference != null) && retimed.matches()
+                && siblingExists(file, retimed.group(1), retimed.group(2))) {
+                // movie.retimed.srt next to movie.srt
+                return true;
+            }
+            if (outputType != 0) {
+                return false;
+            }
+            String name = file.getName();
+            Matcher matcher = PATTERN_FILE_EXTENSION.matcher(name);
+            if (!matcher.find()) {
+                return false;
+            }
+            String base = name.substring(0, matcher.start());
+            Matcher segment = PATTERN_SEGMENT.matcher(name);
+            if (segment.matches() && siblingExists(file, segment.group(1), ".m3u8")) {
+                return true;
+            }
+            int type = SubtitleFormats.forExtension(matcher.group(1)).getType();
+            Matcher track = PATTERN_TRACK.matcher(base);
+            if ((splitTracks || isClipped()) && track.matches()) {
+                // movie.en.srt or movie.60000-120000.srt next to movie.smi
+                for (SubtitleFormat format : SubtitleFormats.all()) {
+                    if (siblingExists(file, track.group(1), '.' + format.getExtensions()[0])) {
+                        return true;
+                    }
+                }
+            }
+            for (SubtitleFormat format : SubtitleFormats.all()) {
+                if (format.getType() != type
+                    && (Converter.otherType(format.getType()) == type || Converter.otherType(type) == format.getType())) {
+                    for (String extension : format.getExtensions()) {
+                        if (siblingExists(file, base, '.' + extension)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean siblingExists(File file, String base, String extension) {
+            return new File(file.getParentFile(), base + extension).isFile();
+        }
+
+        void submit(File file) {
+            if (!PATTERN_FILE_EXTENSION.matcher(file.getName()).find() || !file.isFile() || isReference(file)) {
+                report.skipped();
+                listener.skipped(file);
+                return;
+            }
+
+            if (manifest != null && manifest.isUpToDate(file, options)) {
+                report.skipped();
+                listener.skipped(file);
+                return;
+            }
+
+            long permits = Math.min(Math.max(file.length(), 1L), maxInFlightBytes);
+            try {
+                budget.acquire(permits);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SubtitleException("Batch conversion interrupted.", e);
+            }
+
+            Job job = new Job(file, cpu, options);
+            if (workerPool == null) {
+                try {
+                    completed(job.read().convert().write(), null);
+                } catch (RuntimeException e) {
+                    completed(job, e);
+                }
+                budget.release(permits);
+                return;
+            }
+
+            phaser.register();
+            supplyAsync(job::read, ioPool)
+                .thenApplyAsync(Job::convert, workerPool)
+                .thenApplyAsync(Job::write, ioPool)
+                .whenComplete((j, e) -> {
+                    budget.release(permits);
+                    try {
+                        completed(job, e instanceof CompletionException ? e.getCause() : e);
+                    } finally {
+                        phaser.arriveAndDeregister();
+                    }
+                });
+        }
+
+        private void completed(Job job, Throwable e) {
+            if (e != null || !job.skipped) {
+                Metrics.record(job.trace, job.input, e);
+            }
+            if (e == null && job.skipped) {
+                report.skipped();
+                listener.skipped(job.input);
+            } else if (e == null) {
+                report.converted(job.read, job.written, job.cues);
+                if (job.mismatched) {
+                    report.mismatched();
+                }
+                if (job.tracks != null) {
+                    for (File output : job.tracks) {
+                        listener.converted(job.input, output);
+                    }
+                } else {
+                    listener.converted(job.input, job.output);
+                }
+            } else {
+                failed(job.input, e);
+            }
+        }
+
+        private void failed(File file, Throwable e) {
+            RuntimeException exception = e instanceof RuntimeException
+                ? (RuntimeException) e
+                : new SubtitleException(e.toString() + " (" + file.getName() + ')', e);
+            report.failed(file, exception);
+            listener.failed(file, exception);
+        }
+
+    }
+
+    /**
+     * One file moving through the read, convert and write stages.
+     */
+    private class Job {
+
+        private final File input;
+        private final Semaphore cpu;
+        private final String options;
+        private final Metrics.Trace trace = Metrics.newTrace();
+        private byte[] content;
+        private long modified;
+        private String hash;
+        private boolean skipped = false;
+        private Converter converter;
+        private ByteArrayOutputStream rendered;
+        private File output;
+        private List<File> tracks;
+        private List<File> segments;
+        private long read;
+        private long written;
+        private int cues;
+        private boolean mismatched;
+
+        Job(File input, Semaphore cpu, String options) {
+            this.input = input;
+            this.cpu = cpu;
+            this.options = options;
+        }
+
+        Job read() {
+            modified = input.lastModified();
+            if (manifest == null && cueCache != null && newConverter(input).isCached()) {
+                read = input.length();
+                return this;
+            }
+            Metrics.Span span = Metrics.start(trace, Metrics.Stage.READ);
+            try {
+                content = BatchConverter.this.read(input);
+            } catch (IOException e) {
+                throw new SubtitleException("File read error. (" + input.getName() + ')', e);
+            }
+            Metrics.stop(span);
+            read = content.length;
+            if (Metrics.ENABLED && trace != null) {
+                trace.read(read);
+            }
+            return this;
+        }
+
+        Job convert() {
+            if (cpu == null) {
+                return render();
+            }
+            cpu.acquireUninterruptibly();
+            try {
+                return render();
+            } finally {
+                cpu.release();
+            }
+        }
+
+        private Job render() {
+            if (manifest != null) {
+                hash = ConversionManifest.hash(content);
+                if (manifest.isUnchanged(input, read, modified, hash, options)) {
+                    content = null;
+                    skipped = true;
+                    return this;
+                }
+            }
+
+            converter = newConverter(input).setTrace(trace);
+            converter = content == null ? converter.load() : converter.load(content);
+            content = null;
+            cues = converter.getCues().size();
+            mismatched = converter.isExtensionMismatch();
+            if (loadedReference != null) {
+                listener.aligned(input, converter.align(loadedReference, piecewise));
+            }
+
+            int type = converter.outputType(outputType);
+            if (type == TYPE_WEB_VTT && segmentDuration > 0L) {
+                // Segments are written as they fill, there is no single output to hand to the I/O pool.
+                if (manifest != null) {
+                    manifest.reserve(converter.playlistFile());
+                }
+                segments = converter.writeWebVttSegmentFiles(segmentDuration);
+                output = segments.get(0);
+                converter = null;
+                return this;
+            }
+            if (splitTracks && converter.getCues().getTracks().size() > 1) {
+                // Each track goes to its own file in one walk over the cues, written as they are rendered.
+                if (manifest != null) {
+                    for (File file : converter.trackFiles(type)) {
+                        manifest.reserve(file);
+                    }
+                }
+                tracks = converter.writeTracks(type);
+                output = tracks.get(0);
+                converter = null;
+                return this;
+            }
+            output = converter.outputFile(type);
+            if (manifest != null) {
+                manifest.reserve(output);
+            }
+            rendered = new ByteArrayOutputStream((int) Math.min(read + (read >> 2) + 64, Integer.MAX_VALUE - 8));
+            try {
+                converter.write(Channels.newChannel(rendered), type);
+            } catch (IOException e) {
+                throw new SubtitleException("File write error. (" + output.getName() + ')', e);
+            }
+            converter = null;
+            return this;
+        }
+
+        Job write() {
+            if (skipped) {
+                return this;
+            }
+            if (rendered == null) {
+                List<File> outputs = segments != null ? segments : tracks;
+                if (manifest != null && outputs != null) {
+                    manifest.put(input, read, modified, hash, options, outputs, ConversionManifest.hash(outputs));
+                }
+                return this;
+            }
+            Metrics.Span span = Metrics.start(trace, Metrics.Stage.WRITE);
+            try {
+                BatchConverter.this.write(output, rendered);
+            } catch (IOException e) {
+                throw new SubtitleException("File write error. (" + output.getName() + ')', e);
+            }
+            Metrics.stop(span);
+            written = rendered.size();
+            if (Metrics.ENABLED && trace != null) {
+                trace.written(written);
+            }
+            if (manifest != null) {
+                manifest.put(input, read, modified, hash, options, output, ConversionManifest.hash(rendered));
+            }
+            rendered = null;
+            return this;
+        }
+
+    }
+
+    private static class ByteBudget {
+
+        private long available;
+
+        ByteBudget(long available) {
+            this.available = available;
+        }
+
+        synchronized void acquire(long bytes) throws InterruptedException {
+            while (available < bytes) {
+                wait();
+            }
+            available -= bytes;
+        }
+
+        synchronized void release(long bytes) {
+            available += bytes;
+            notifyAll();
+        }
+
+    }
+
+    /**
+     * Progress callbacks, called from the pool threads.
+     */
+    public interface Listener {
+
+        default void converted(File input, File output) {
+        }
+
+        default void failed(File input, RuntimeException e) {
+        }
+
+        default void skipped(File input) {
+        }
+
+        default void aligned(File input, Retiming retiming) {
+        }
+
+    }
+
+}
@@ -0,0 +1,129 @@
+package myhyuny.subtitle;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Summary of a {@link BatchConverter} run. Counters are updated from the worker threads.
+ *
+ * @author Hyunmin Kang
+ */
+public class BatchReport {
+
+    private final AtomicInteger converted = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger mismatched = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong cues = new AtomicLong();
+    private final Queue<Failure> failures = new ConcurrentLinkedQueue<>();
+    private long wallTime;
+
+    void converted(long read, long written, int count) {
+        converted.incrementAndGet();
+        bytesRead.addAndGet(read);
+        bytesWritten.addAndGet(written);
+        cues.addAndGet(count);
+    }
+
+    void failed(File file, RuntimeException e) {
+        failed.incrementAndGet();
+        failures.add(new Failure(file, e));
+    }
+
+    void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    void mismatched() {
+        mismatched.incrementAndGet();
+    }
+
+    void setWallTime(long nanos) {
+        wallTime = nanos;
+    }
+
+    public int getConverted() {
+        return converted.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return converted files whose content is in another format than their extension
+     */
+    public int getMismatched() {
+        return mismatched.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getCues() {
+        return cues.get();
+    }
+
+    /**
+     * @return wall time in nanoseconds
+     */
+    public long getWallTime() {
+        return wallTime;
+    }
+
+    public List<Failure> getFailures() {
+        return new ArrayList<>(failures);
+    }
+
+    @Override
+    public String toString() {
+        return "converted: " + getConverted() + ", failed: " + getFailed() + ", skipped: " + getSkipped()
+            + ", mismatched: " + getMismatched()
+            + ", read: " + getBytesRead() + " bytes, written: " + getBytesWritten() + " bytes, cues: " + getCues()
+            + ", time: " + NANOSECONDS.toMillis(wallTime) + " ms";
+    }
+
+    public static final class Failure {
+
+        private final File file;
+        private final RuntimeException exception;
+
+        Failure(File file, RuntimeException exception) {
+            this.file = file;
+            this.exception = exception;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public RuntimeException getException() {
+            return exception;
+        }
+
+        @Override
+        public String toString() {
+            return file.getPath() + ": " + exception.getMessage();
+        }
+
+    }
+
+}
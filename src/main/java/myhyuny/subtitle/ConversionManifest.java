@@ -0,0 +1,385 @@
+package myhyuny.subtitle;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk record of earlier conversions, so that a rerun over the same library skips the files
+ * whose input, options and output are unchanged. An input counts as unchanged when its size and
+ * modification time match, or, if only the time differs, when its SHA-256 does. The outputs, one
+ * file or several such as WebVTT segments and their playlist, must still have the recorded size and
+ * modification time.
+ * <p>
+ * Records are appended to a journal one line each as files are converted, and the journal is
+ * rewritten on {@link #close()} without the entries whose input is gone or that were not seen for
+ * {@link #setMaxAge(long) max age}. It may be shared by the threads of one process.
+ *
+ * @author Hyunmin Kang
+ */
+public class ConversionManifest implements Closeable {
+
+    private static final String HEADER = "# subtitle-converter manifest 2";
+
+    private final Path path;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> outputs = ConcurrentHashMap.newKeySet();
+    private final Writer journal;
+    private long maxAge = TimeUnit.DAYS.toMillis(30);
+
+    private ConversionManifest(Path path) throws IOException {
+        this.path = path;
+        boolean valid = false;
+        try (BufferedReader reader = Files.newBufferedReader(path, UTF_8)) {
+            if (HEADER.equals(reader.readLine())) {
+                valid = true;
+                for (String line; (line = reader.readLine()) != null; ) {
+                    Entry entry = Entry.parse(line);
+                    if (entry != null) {
+                        entries.put(entry.input, entry);
+                        Collections.addAll(outputs, entry.outputs);
+                    }
+                }
+            }
+        } catch (NoSuchFileException ignore) {
+        }
+
+        if (valid) {
+            journal = Files.newBufferedWriter(path, UTF_8, CREATE, WRITE, APPEND);
+        } else {
+            journal = Files.newBufferedWriter(path, UTF_8, CREATE, WRITE, TRUNCATE_EXISTING);
+            journal.write(HEADER);
+            journal.write('\n');
+            journal.flush();
+        }
+    }
+
+    /**
+     * Opens the manifest, or starts an empty one if the file does not exist or has an older format.
+     */
+    public static ConversionManifest open(Path path) throws IOException {
+        return new ConversionManifest(path);
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * @param maxAge milliseconds after which an entry that was not seen is dropped
+     */
+    public ConversionManifest setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+        return this;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return {@code true} if the file was written, or is about to be, as the output of another input
+     */
+    boolean isOutput(File file) {
+        return outputs.contains(file.getAbsolutePath());
+    }
+
+    /**
+     * @return {@code true} if the file was converted before
+     */
+    boolean isInput(File file) {
+        return entries.containsKey(file.getAbsolutePath());
+    }
+
+    /**
+     * Takes a file as an output before it is written, so that a walk running at the same time does
+     * not pick it up as an input.
+     */
+    void reserve(File output) {
+        outputs.add(output.getAbsolutePath());
+    }
+
+    /**
+     * Checks by size and modification time only, without reading the input.
+     */
+    boolean isUpToDate(File input, String options) {
+        Entry entry = entries.get(input.getAbsolutePath());
+        if (entry == null || !entry.options.equals(options)
+            || entry.size != input.length() || entry.modified != input.lastModified() || !entry.isOutputIntact()) {
+            return false;
+        }
+        entry.seen = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Checks by content hash, for an input whose modification time changed. A match records the new time.
+     */
+    boolean isUnchanged(File input, long size, long modified, String hash, String options) {
+        Entry entry = entries.get(input.getAbsolutePath());
+        if (entry == null || !entry.options.equals(options)
+            || entry.size != size || !entry.hash.equals(hash) || !entry.isOutputIntact()) {
+            return false;
+        }
+        put(new Entry(entry.input, size, modified, hash, options, entry.outputs, entry.outputHash));
+        return true;
+    }
+
+    /**
+     * Records a conversion. The output is looked up for its size and modification time.
+     */
+    void put(File input, long size, long modified, String hash, String options, File output, String outputHash) {
+        put(input, size, modified, hash, options, Collections.singletonList(output), outputHash);
+    }
+
+    /**
+     * Records a conversion to several files, see {@link #hash(List)}.
+     */
+    void put(File input, long size, long modified, String hash, String options, List<File> outputs, String outputHash) {
+        String[] paths = new String[outputs.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = outputs.get(i).getAbsolutePath();
+        }
+        put(new Entry(input.getAbsolutePath(), size, modified, hash, options, paths, outputHash));
+    }
+
+    private void put(Entry entry) {
+        entries.put(entry.input, entry);
+        Collections.addAll(outputs, entry.outputs);
+        synchronized (journal) {
+            try {
+                entry.write(journal);
+                journal.flush();
+            } catch (IOException e) {
+                throw new SubtitleException("Manifest write error. (" + path.getFileName() + ')', e);
+            }
+        }
+    }
+
+    static String hash(byte[] content) {
+        return hex(digest().digest(content));
+    }
+
+    static String hash(ByteArrayOutputStream content) {
+        MessageDigest digest = digest();
+        try (OutputStream out = new DigestOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }, digest)) {
+            content.writeTo(out);
+        } catch (IOException e) {
+            throw new SubtitleException("Hash error.", e);
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Hash of the contents of the files one after another, for outputs written straight to disk.
+     */
+    static String hash(List<File> files) {
+        MessageDigest digest = digest();
+        try {
+            for (File file : files) {
+                digest.update(Files.readAllBytes(file.toPath()));
+            }
+        } catch (IOException e) {
+            throw new SubtitleException("Hash error.", e);
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new SubtitleException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            chars[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Rewrites the journal with the live entries only.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (journal) {
+            journal.close();
+
+            long oldest = System.currentTimeMillis() - maxAge;
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, UTF_8, CREATE, WRITE, TRUNCATE_EXISTING)) {
+                writer.write(HEADER);
+                writer.write('\n');
+                for (Entry entry : entries.values()) {
+                    if (entry.seen >= oldest && new File(entry.input).isFile()) {
+                        entry.write(writer);
+                    }
+                }
+            }
+            try {
+                Files.move(temp, path, REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final String input;
+        private final long size;
+        private final long modified;
+        private final String hash;
+        private final String options;
+        private final String outputHash;
+        private final String[] outputs;
+        private final long[] outputSizes;
+        private final long[] outputModified;
+        private volatile long seen;
+
+        Entry(String input, long size, long modified, String hash, String options, String[] outputs, String outputHash) {
+            this(input, size, modified, hash, options, outputHash, outputs, new long[outputs.length],
+                new long[outputs.length], System.currentTimeMillis());
+            for (int i = 0; i < outputs.length; i++) {
+                File file = new File(outputs[i]);
+                outputSizes[i] = file.length();
+                outputModified[i] = file.lastModified();
+            }
+        }
+
+        private Entry(
+            String input, long size, long modified, String hash, String options, String outputHash,
+            String[] outputs, long[] outputSizes, long[] outputModified, long seen
+        ) {
+            this.input = input;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.options = options;
+            this.outputHash = outputHash;
+            this.outputs = outputs;
+            this.outputSizes = outputSizes;
+            this.outputModified = outputModified;
+            this.seen = seen;
+        }
+
+        boolean isOutputIntact() {
+            for (int i = 0; i < outputs.length; i++) {
+                File file = new File(outputs[i]);
+                if (!file.isFile() || file.length() != outputSizes[i] || file.lastModified() != outputModified[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Input, size, modification time, hash, options, output hash and last seen, then the path, size
+         * and modification time of each output.
+         *
+         * @return the entry, or {@code null} for a damaged line
+         */
+        static Entry parse(String line) {
+            String[] f = line.split("\t", -1);
+            if (f.length < 10 || (f.length - 7) % 3 != 0) {
+                return null;
+            }
+            int count = (f.length - 7) / 3;
+            String[] outputs = new String[count];
+            long[] outputSizes = new long[count];
+            long[] outputModified = new long[count];
+            try {
+                for (int i = 0; i < count; i++) {
+                    outputs[i] = unescape(f[7 + i * 3]);
+                    outputSizes[i] = Long.parseLong(f[8 + i * 3]);
+                    outputModified[i] = Long.parseLong(f[9 + i * 3]);
+                }
+                return new Entry(unescape(f[0]), Long.parseLong(f[1]), Long.parseLong(f[2]), f[3], unescape(f[4]),
+                    f[5], outputs, outputSizes, outputModified, Long.parseLong(f[6])
+                );
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        void write(Writer writer) throws IOException {
+            StringBuilder line = new StringBuilder(256 + outputs.length * 128);
+            line.append(escape(input)).append('\t').append(size).append('\t').append(modified).append('\t').append(hash)
+                .append('\t').append(escape(options)).append('\t').append(outputHash).append('\t').append(seen);
+            for (int i = 0; i < outputs.length; i++) {
+                line.append('\t').append(escape(outputs[i])).append('\t').append(outputSizes[i])
+                    .append('\t').append(outputModified[i]);
+            }
+            writer.write(line.append('\n').toString());
+        }
+
+        private static String escape(String s) {
+            return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+        }
+
+        private static String unescape(String s) {
+            if (s.indexOf('\\') < 0) {
+                return s;
+            }
+            StringBuilder builder = new StringBuilder(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '\\' && i + 1 < s.length()) {
+                    switch (c = s.charAt(++i)) {
+                        case 't':
+                            c = '\t';
+                            break;
+                        case 'n':
+                            c = '\n';
+                            break;
+                        case 'r':
+                            c = '\r';
+                            break;
+                    }
+                }
+                builder.append(c);
+            }
+            return builder.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,369 @@
+package myhyuny.subtitle;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static myhyuny.subtitle.Converter.LINE_DELIMITER_UNIX;
+import static myhyuny.subtitle.Converter.LINE_DELIMITER_WINDOWS;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Conversion server for pipelines that would otherwise start a JVM for every file. It listens on the
+ * loopback address and reads requests one after another on each connection.
+ * <pre>
+ * CONVERT /path/to/movie.smi         CONVERT movie.smi
+ * Output-Type: srt                   Content-Length: 1234
+ *
+ *                                    (1234 bytes)
+ * </pre>
+ * The optional headers are {@code Input-Charset}, {@code Output-Charset}, {@code Line-Delimiter}
+ * ({@code unix}, {@code windows}), {@code Sync} (milliseconds), {@code Track} (a SAMI class or language,
+ * {@code ENCC}, {@code en}), {@code Retime} (steps of {@link Retiming#parse(String)}) and {@code Output-Type} (an extension, {@code smi}, {@code srt}, {@code vtt}).
+ * Without {@code Content-Length} the path is converted next to the input, as from the command line,
+ * and the answer is {@code OK} with the output path. With it the content is converted in memory and
+ * the answer is {@code OK} with the output name, followed by the converted bytes.
+ * <pre>
+ * OK /path/to/movie.srt              OK movie.srt
+ * Cues: 1024                         Cues: 1024
+ * Parse-Time: 2100                   Parse-Time: 2100
+ * Write-Time: 900                    Write-Time: 900
+ *                                    Content-Length: 4321
+ *
+ *                                    (4321 bytes)
+ * </pre>
+ * Times are in microseconds. A failed request is answered with {@code ERROR} and the message, and the
+ * connection stays open. {@code PING} is answered with {@code OK}.
+ * <p>
+ * Cues read from paths are kept in a {@link CueCache} of {@code subtitle.cache.maxBytes}, so that
+ * converting a file again with another sync or output type does not parse it again. {@code STATS}
+ * is answered with {@code OK} and the {@code Cache-Files}, {@code Cache-Bytes}, {@code Cache-Hits},
+ * {@code Cache-Misses} and {@code Cache-Evictions} of the cache, and the {@code Format-Sniffed},
+ * {@code Format-Mismatches} and {@code Format-Fallbacks} of format detection since the start.
+ * {@code METRICS} is answered with {@code OK} and the {@link Metrics} totals in the Prometheus text
+ * format as content, which are also written to {@code subtitle.metrics.prometheus} every few seconds
+ * of requests and when the server closes.
+ *
+ * @author Hyunmin Kang
+ */
+class ConversionServer implements Closeable {
+
+    static final int DEFAULT_PORT = 7749;
+
+    private static final int MAX_CONTENT_LENGTH = Integer.getInteger("subtitle.server.maxContentLength", 256 * 1024 * 1024);
+    private static final int IDLE_TIMEOUT = (int) TimeUnit.MINUTES.toMillis(5);
+
+    private final ServerSocket serverSocket;
+    private final ThreadPoolExecutor executor;
+    private final CueCache cueCache = new CueCache();
+
+    /**
+     * @param threads connections served at once
+     * @param backlog connections kept waiting for a thread before new ones are turned away
+     */
+    ConversionServer(int port, int threads, int backlog) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(backlog), (runnable) -> {
+            Thread thread = new Thread(runnable, "subtitle-server-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    ConversionServer(int port) throws IOException {
+        this(port,
+            Integer.getInteger("subtitle.server.threads", Runtime.getRuntime().availableProcessors()),
+            Integer.getInteger("subtitle.server.backlog", 64)
+        );
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed.
+     */
+    void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+
+            try {
+                executor.execute(new Connection(socket));
+            } catch (RejectedExecutionException e) {
+                try (Socket s = socket) {
+                    s.getOutputStream().write("ERROR Server busy\n\n".getBytes(UTF_8));
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdown();
+        Metrics.export();
+    }
+
+    private class Connection implements Runnable {
+
+        private final Socket socket;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        private final ByteArrayOutputStream rendered = new ByteArrayOutputStream(64 * 1024);
+        private InputStream in;
+        private OutputStream out;
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try (Socket s = socket) {
+                s.setSoTimeout(IDLE_TIMEOUT);
+                in = new BufferedInputStream(s.getInputStream());
+                out = new BufferedOutputStream(s.getOutputStream());
+                for (String request; (request = readLine()) != null; ) {
+                    if (request.isEmpty()) {
+                        continue;
+                    }
+                    handle(request);
+                    out.flush();
+                }
+            } catch (IOException ignore) {
+                // The client went away, nothing to answer.
+            }
+        }
+
+        private void handle(String request) throws IOException {
+            if ("PING".equals(request)) {
+                write("OK\n\n");
+                return;
+            }
+            if ("STATS".equals(request)) {
+                write("OK\nCache-Files: " + cueCache.size() + "\nCache-Bytes: " + cueCache.getBytes()
+                    + "\nCache-Hits: " + cueCache.getHits() + "\nCache-Misses: " + cueCache.getMisses()
+                    + "\nCache-Evictions: " + cueCache.getEvictions()
+                    + "\nFormat-Sniffed: " + SubtitleFormats.getSniffed() + "\nFormat-Mismatches: " + SubtitleFormats.getMismatches()
+                    + "\nFormat-Fallbacks: " + SubtitleFormats.getFallbacks() + "\n\n");
+                return;
+            }
+            if ("METRICS".equals(request)) {
+                byte[] metrics = Metrics.prometheus().getBytes(UTF_8);
+                write("OK\nContent-Length: " + metrics.length + "\n\n");
+                out.write(metrics);
+                return;
+            }
+
+            Request r = new Request();
+            for (String header; (header = readLine()) != null && !header.isEmpty(); ) {
+                r.header(header);
+            }
+
+            byte[] content = null;
+            if (r.contentLength >= 0) {
+                if (r.contentLength > MAX_CONTENT_LENGTH) {
+                    write("ERROR Content too large: " + r.contentLength + "\n\n");
+                    out.flush();
+                    throw new IOException("Content too large: " + r.contentLength);
+                }
+                content = new byte[r.contentLength];
+                for (int off = 0, len; off < content.length; off += len) {
+                    if ((len = in.read(content, off, content.length - off)) < 0) {
+                        throw new EOFException();
+                    }
+                }
+            }
+
+            if (!request.startsWith("CONVERT ")) {
+                write("ERROR Unknown request: " + request + "\n\n");
+                return;
+            }
+            if (r.error != null) {
+                write("ERROR " + r.error + "\n\n");
+                return;
+            }
+
+            File file = new File(request.substring(8).trim());
+            Metrics.Trace trace = Metrics.newTrace();
+            try {
+                convert(file, content, r, trace);
+                Metrics.record(trace, file, null);
+            } catch (RuntimeException e) {
+                Metrics.record(trace, file, e);
+                write("ERROR " + e.getMessage() + "\n\n");
+            }
+            try {
+                Metrics.exportIfDue();
+            } catch (IOException e) {
+                System.err.println("Metrics error: " + e.getMessage());
+            }
+        }
+
+        private void convert(File file, byte[] content, Request r, Metrics.Trace trace) throws IOException {
+            Converter converter = new Converter(file)
+                .setTrace(trace)
+                .setLineDelimiter(r.lineDelimiter)
+                .setSync(r.sync)
+                .setTrack(r.track)
+                .setRetiming(r.retiming);
+            if (r.inputCharset != null) {
+                converter.setInputCharset(r.inputCharset);
+            }
+            if (r.outputCharset != null) {
+                converter.setOutputCharset(r.outputCharset);
+            }
+
+            long start = System.nanoTime();
+            if (content == null) {
+                converter.setCueCache(cueCache).load();
+            } else {
+                converter.load(content);
+            }
+            long parsed = System.nanoTime();
+
+            if (content == null) {
+                File output = converter.write(r.outputType);
+                long written = System.nanoTime();
+                write("OK " + output.getPath() + '\n' + timing(converter, start, parsed, written) + '\n');
+                return;
+            }
+
+            int type = converter.outputType(r.outputType);
+            File output = converter.outputFile(type);
+            rendered.reset();
+            converter.write(Channels.newChannel(rendered), type);
+            long written = System.nanoTime();
+            if (Metrics.ENABLED && trace != null) {
+                trace.written(rendered.size());
+            }
+            write("OK " + output.getName() + '\n' + timing(converter, start, parsed, written)
+                + "Content-Length: " + rendered.size() + "\n\n");
+            rendered.writeTo(out);
+        }
+
+        private String timing(Converter converter, long start, long parsed, long written) {
+            return "Cues: " + converter.getCues().size() + '\n'
+                + "Parse-Time: " + TimeUnit.NANOSECONDS.toMicros(parsed - start) + '\n'
+                + "Write-Time: " + TimeUnit.NANOSECONDS.toMicros(written - parsed) + '\n';
+        }
+
+        private void write(String s) throws IOException {
+            out.write(s.getBytes(UTF_8));
+        }
+
+        private String readLine() throws IOException {
+            line.reset();
+            int c;
+            while ((c = in.read()) != -1 && c != '\n') {
+                line.write(c);
+            }
+            if (c == -1 && line.size() == 0) {
+                return null;
+            }
+            String s = new String(line.toByteArray(), UTF_8);
+            return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+        }
+
+    }
+
+    private static class Request {
+
+        private Charset inputCharset;
+        private Charset outputCharset;
+        private String lineDelimiter;
+        private long sync;
+        private int outputType;
+        private String track;
+        private Retiming retiming;
+        private int contentLength = -1;
+        private String error;
+
+        /**
+         * @throws IOException if the content length is unreadable, as the request can then not be skipped
+         */
+        void header(String header) throws IOException {
+            int colon = header.indexOf(':');
+            if (colon < 0) {
+                error = "Malformed header: " + header;
+                return;
+            }
+            String name = header.substring(0, colon).trim();
+            String value = header.substring(colon + 1).trim();
+
+            try {
+                switch (name.toLowerCase()) {
+                    case "input-charset":
+                        inputCharset = Charset.forName(value);
+                        break;
+                    case "output-charset":
+                        outputCharset = Charset.forName(value);
+                        break;
+                    case "line-delimiter":
+                        lineDelimiter = "unix".equalsIgnoreCase(value) ? LINE_DELIMITER_UNIX : LINE_DELIMITER_WINDOWS;
+                        break;
+                    case "sync":
+                        sync = Long.parseLong(value);
+                        break;
+                    case "track":
+                        track = value;
+                        break;
+                    case "retime":
+                        try {
+                            retiming = Retiming.parse(value);
+                        } catch (ParseException e) {
+                            error = "Bad Retime: " + e.getMessage();
+                        }
+                        break;
+                    case "output-type":
+                        SubtitleFormat format = SubtitleFormats.forExtension(value);
+                        outputType = format == null ? 0 : format.getType();
+                        break;
+                    case "content-length":
+                        try {
+                            contentLength = Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            throw new IOException("Bad Content-Length: " + value, e);
+                        }
+                        break;
+                    default:
+                        error = "Unknown header: " + name;
+                }
+            } catch (IllegalArgumentException e) {
+                error = "Bad header value: " + header;
+            }
+        }
+
+    }
+
+}
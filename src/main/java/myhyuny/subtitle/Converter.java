@@ -1,31 +1,46 @@
 package myhyuny.subtitle;
 
-import static java.lang.Long.parseLong;
-import static java.nio.charset.StandardCharsets.UTF_16BE;
-import static java.nio.charset.StandardCharsets.UTF_16LE;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.charset.CodingErrorAction.REPLACE;
 import static java.nio.file.Files.newInputStream;
-import static java.nio.file.Files.newOutputStream;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static java.util.regex.Pattern.CASE_INSENSITIVE;
 import static java.util.regex.Pattern.DOTALL;
 import static myhyuny.subtitle.Subtitle.TYPE_SAMI;
 import static myhyuny.subtitle.Subtitle.TYPE_SUB_RIP;
-import static myhyuny.subtitle.io.IO.readAll;
+import static myhyuny.subtitle.Subtitle.TYPE_WEB_VTT;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import myhyuny.subtitle.io.CharsetDetector;
+import myhyuny.subtitle.io.DefaultCharsetDetector;
+import myhyuny.subtitle.io.IO;
+
+import java.io.CharArrayWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,32 +52,33 @@ import java.util.regex.Pattern;
 public class Converter {
 
     private static final Pattern PATTERN_EXTENSION = Pattern.compile("[^.]+$");
-    private static final Pattern PATTERN_SUB_RIP = Pattern.compile("\\s{2,}\\d+\\s+");
-    private static final Pattern PATTERN_SUB_RIP_DATA = Pattern.compile(
+    static final Pattern PATTERN_SUB_RIP_DATA = Pattern.compile(
         "(\\d{2}:\\d{2}:\\d{2},\\d{1,3})\\s+-->\\s+(\\d{2}:\\d{2}:\\d{2},\\d{1,3})\\s+(.+)", DOTALL
     );
-    private static final Pattern PATTERN_SAMI = Pattern.compile("\\s*<sync\\s+", CASE_INSENSITIVE);
-    private static final Pattern PATTERN_SAMI_DATA = Pattern.compile(
+    static final Pattern PATTERN_SAMI_DATA = Pattern.compile(
         "start=['\"]?(\\d+)['\"]?\\s*[^>]*>\\s*(.*)\\s*", CASE_INSENSITIVE | DOTALL
     );
     static final Pattern PATTERN_SAMI_NEW_LINE_TAG = Pattern.compile("<br[^>]*/?>", CASE_INSENSITIVE);
     static final Pattern PATTERN_SAMI_TAG = Pattern.compile("</?\\w+\\s*[^>]*\\s*/?>");
-    static final Pattern PATTERN_NEW_LINE = Pattern.compile("\\n");
     static final Pattern PATTERN_LEFT_TRIM = Pattern.compile("\\n\\s+");
     static final Pattern PATTERN_RIGHT_TRIM = Pattern.compile("\\s+\\n");
     static final Pattern PATTERN_SPACE = Pattern.compile("[\t 　]+");
-    private static final Pattern PATTERN_COMMENTS = Pattern.compile("<!--.*?-->", DOTALL);
 
-    static final Pattern PATTERN_FILE_EXTENSION = Pattern.compile("\\.(sa?mi|srt)$", CASE_INSENSITIVE);
-    private static final String FILE_EXTENSION_SAMI = "smi";
-    private static final String FILE_EXTENSION_SUB_RIP = "srt";
+    static final Pattern PATTERN_FILE_EXTENSION = SubtitleFormats.extensionPattern();
+
+    /**
+     * Input files of this size or larger are memory-mapped instead of read through a stream.
+     */
+    static final long MAP_THRESHOLD = Long.getLong("subtitle.mapThreshold", 1024L * 1024);
+
+    /**
+     * SubRip and SAMI inputs of this size or larger are parsed on several cores, see {@link ParallelParser}.
+     */
+    static final long PARALLEL_THRESHOLD = Long.getLong("subtitle.parallelThreshold", 16L * 1024 * 1024);
 
     static final String LINE_DELIMITER_UNIX = "\n";
     static final String LINE_DELIMITER_WINDOWS = "\r\n";
 
-    private static final Charset CHARSET_UTF_32BE = Charset.forName("UTF-32BE");
-    private static final Charset CHARSET_UTF_32LE = Charset.forName("UTF-32LE");
-    private static final Charset CHARSET_EUC_KR = Charset.forName("EUC-KR");
     private static final Charset CHARSET_CP949 = Charset.forName("x-windows-949");
     private static final Charset CHARSET_DEFAULT;
 
@@ -77,19 +93,28 @@ public class Converter {
         }
     }
 
-    private final SimpleDateFormat formatSubRip = new SimpleDateFormat("HH:mm:ss,SSS");
-
-    {
-        formatSubRip.setTimeZone(TimeZone.getTimeZone("GMT"));
-    }
-
-    private List<Subtitle> subtitles;
+    private CueTable cues;
+    private CueTable parsed;
     private File inputFile;
-    private String inputType;
+    private SubtitleFormat inputFormat;
     private Charset inputCharset = null;
     private Charset outputCharset = UTF_8;
+    private CharsetDetector charsetDetector = new DefaultCharsetDetector(CHARSET_DEFAULT);
     private String lineDelimiter;
     private long sync;
+    private boolean regexParser = Boolean.getBoolean("subtitle.regexParser");
+    private ByteBuffer content;
+    private CueCache cueCache;
+    private long loadedSync;
+    private String track;
+    private CueIndex index;
+    private long clipFrom = 0L;
+    private long clipTo = Long.MAX_VALUE;
+    private boolean clipRebase = false;
+    private Retiming retiming;
+    private Retiming loadedRetiming;
+    private int parseParallelism = Integer.getInteger("subtitle.parseParallelism", Runtime.getRuntime().availableProcessors());
+    private Metrics.Trace trace = Metrics.newTrace();
 
     public Converter(File input) {
         inputFile = input;
@@ -113,6 +138,18 @@ public class Converter {
         return this;
     }
 
+    public CharsetDetector getCharsetDetector() {
+        return charsetDetector;
+    }
+
+    /**
+     * Detector used when no input charset is set.
+     */
+    public Converter setCharsetDetector(CharsetDetector charsetDetector) {
+        this.charsetDetector = charsetDetector;
+        return this;
+    }
+
     public String getLineDelimiter() {
         return lineDelimiter;
     }
@@ -131,284 +168,1007 @@ public class Converter {
         return this;
     }
 
-    private void fileOpen(File file) throws SubtitleException {
-        String inputSubtitle = null;
-
-        if (inputCharset == null) {
-            try (BufferedInputStream in = new BufferedInputStream(newInputStream(file.toPath()))) {
-                byte[] bytes = readAll(in);
-
-                if (bytes[0] == (byte) 0x00 && bytes[1] == (byte) 0x00 && bytes[2] == (byte) 0xFE && bytes[3] == (byte) 0xFF) {
-                    inputCharset = CHARSET_UTF_32BE;
-                } else if (bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF) {
-                    inputCharset = UTF_8;
-                } else if (bytes[0] == (byte) 0xFE && bytes[1] == (byte) 0xFF) {
-                    inputCharset = UTF_16BE;
-                } else if (bytes[0] == (byte) 0xFF && bytes[1] == (byte) 0xFE) {
-                    if (bytes[2] == (byte) 0x00 && bytes[3] == (byte) 0x00) {
-                        inputCharset = CHARSET_UTF_32LE;
-                    } else {
-                        inputCharset = UTF_16LE;
-                    }
+    public boolean isRegexParser() {
+        return regexParser;
+    }
 
-                } else {
-                    if (CHARSET_DEFAULT.equals(Charset.defaultCharset())) {
-                        inputCharset = CHARSET_DEFAULT;
-                    } else {
-                        String jnu = new String(bytes, CHARSET_DEFAULT);
-                        String def = new String(bytes, Charset.defaultCharset());
-                        inputSubtitle = jnu.length() < def.length() ? jnu : def;
-                    }
-                }
+    /**
+     * Reads SubRip with the former regular expression pipeline, for comparing against the default parser.
+     */
+    public Converter setRegexParser(boolean regexParser) {
+        this.regexParser = regexParser;
+        return this;
+    }
 
-                if (inputSubtitle == null) {
-                    inputSubtitle = new String(bytes, getInputCharset());
-                }
+    public int getParseParallelism() {
+        return parseParallelism;
+    }
 
-            } catch (IOException e) {
-                throw new SubtitleException("File read error. (" + file.getName() + ')', e);
-            }
+    /**
+     * Number of pieces a large input is cut in to be parsed at the same time, {@code 1} to parse on
+     * the calling thread only.
+     */
+    public Converter setParseParallelism(int parseParallelism) {
+        this.parseParallelism = parseParallelism;
+        return this;
+    }
 
-        } else {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(newInputStream(file.toPath()), inputCharset))) {
-                inputSubtitle = readAll(reader);
-            } catch (IOException e) {
-                throw new SubtitleException("File read error. (" + file.getName() + ')', e);
+    Metrics.Trace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Trace to time the stages in, for a caller that times stages of the same file itself.
+     */
+    Converter setTrace(Metrics.Trace trace) {
+        this.trace = trace;
+        return this;
+    }
+
+    public CueCache getCueCache() {
+        return cueCache;
+    }
+
+    /**
+     * Cache to take the cues from when the same file was loaded before.
+     */
+    public Converter setCueCache(CueCache cueCache) {
+        this.cueCache = cueCache;
+        return this;
+    }
+
+    public String getTrack() {
+        return track;
+    }
+
+    /**
+     * Writes only one language track of a SAMI file with several, e.g. {@code ENCC} or {@code en}.
+     * A file without the track is written whole.
+     */
+    public Converter setTrack(String track) {
+        this.track = track;
+        return this;
+    }
+
+    public long getClipFrom() {
+        return clipFrom;
+    }
+
+    public long getClipTo() {
+        return clipTo;
+    }
+
+    /**
+     * Writes only the cues showing from {@code from} to before {@code to}, in milliseconds of the
+     * output with the sync applied. Cues are cut to the window and the output is named after it,
+     * e.g. {@code movie.60000-120000.srt}.
+     *
+     * @param to end of the window, or {@link Long#MAX_VALUE} for the end of the input
+     */
+    public Converter setClip(long from, long to) {
+        if (to <= from) {
+            throw new IllegalArgumentException("Empty clip: " + from + '-' + to);
+        }
+        clipFrom = from;
+        clipTo = to;
+        return this;
+    }
+
+    public boolean isClipRebase() {
+        return clipRebase;
+    }
+
+    /**
+     * Moves the clipped cues so that the window starts at zero.
+     */
+    public Converter setClipRebase(boolean clipRebase) {
+        this.clipRebase = clipRebase;
+        return this;
+    }
+
+    public Retiming getRetiming() {
+        return retiming;
+    }
+
+    /**
+     * Maps the cue times once as they are loaded, before the sync, e.g. for drift or another frame
+     * rate. Output of the input format is named {@code movie.retimed.srt}.
+     *
+     * @param retiming the map, or {@code null} for the times as read
+     */
+    public Converter setRetiming(Retiming retiming) {
+        this.retiming = retiming;
+        return this;
+    }
+
+    private boolean isClipped() {
+        return clipFrom != 0L || clipTo != Long.MAX_VALUE;
+    }
+
+    /**
+     * Cues showing at {@code time} of the output, with the sync added to their times.
+     */
+    public CueTable getCuesAt(long time) throws SubtitleException {
+        return select(index().at(time - sync));
+    }
+
+    /**
+     * Cues showing at some time from {@code from} to before {@code to} of the output, with the sync
+     * added to their times.
+     */
+    public CueTable getCues(long from, long to) throws SubtitleException {
+        return select(index().overlapping(from - sync, to == Long.MAX_VALUE ? to : to - sync));
+    }
+
+    private CueIndex index() throws SubtitleException {
+        load();
+        if (index == null || index.getCues() != cues) {
+            index = new CueIndex(cues);
+        }
+        return index;
+    }
+
+    private CueTable select(int[] indices) {
+        CueTable table = new CueTable(indices.length, indices.length * 64);
+        CueTable.Text text = new CueTable.Text();
+        for (int i : indices) {
+            table.add(cues.getType(i), cues.getStart(i) + sync, cues.getEnd(i) + sync, cues.getText(i, text),
+                cues.getSettings(i), cues.getTrack(i)
+            );
+        }
+        return table.trim();
+    }
+
+    /**
+     * The cues of the clip window, cut to it and rebased if asked, or {@code table} when there is no window.
+     */
+    private CueTable clip(CueTable table, long sync) {
+        if (!isClipped()) {
+            return table;
+        }
+        CueIndex clipIndex = table == cues ? index() : new CueIndex(table);
+        int[] indices = clipIndex.overlapping(clipFrom - sync, clipTo == Long.MAX_VALUE ? clipTo : clipTo - sync);
+        long shift = clipRebase ? clipFrom : 0L;
+
+        CueTable clipped = new CueTable(indices.length, indices.length * 64);
+        CueTable.Text text = new CueTable.Text();
+        for (int i : indices) {
+            long start = Math.max(table.getStart(i) + sync, clipFrom) - shift - sync;
+            long end = Math.min(table.getEnd(i) + sync, clipTo) - shift - sync;
+            clipped.add(table.getType(i), start, end, table.getText(i, text), table.getSettings(i), table.getTrack(i));
+        }
+        return clipped.trim();
+    }
+
+    private String clipSuffix() {
+        return clipFrom + "-" + (clipTo == Long.MAX_VALUE ? "" : String.valueOf(clipTo));
+    }
+
+    /**
+     * Language tracks of the input, empty if it has none.
+     */
+    public List<Track> getTracks() throws SubtitleException {
+        return load().cues.getTracks();
+    }
+
+    /**
+     * Sets the retiming that lays the cues over those of {@code reference}, a file for the same video
+     * with good timing, found from the cue starts alone, see {@link SyncAligner}. The sync of both is
+     * kept, so the output with this sync lines up with the reference with its own.
+     *
+     * @param piecewise whether parts of the input may be off by different amounts, e.g. around cuts
+     * @return the retiming set
+     * @throws SubtitleException if too few cues match
+     */
+    public Retiming align(Converter reference, boolean piecewise) throws SubtitleException {
+        reference.load();
+        long[] target = onsets(load().parsed, selectedTrack(parsed), 0L);
+        long[] starts = onsets(reference.cues, reference.selectedTrack(reference.cues), reference.sync - sync);
+        Retiming aligned = new SyncAligner(starts).align(target, piecewise);
+        setRetiming(aligned).load();
+        return aligned;
+    }
+
+    /**
+     * @return starts of the cues that would be written, sorted
+     */
+    private static long[] onsets(CueTable table, Track selected, long shift) {
+        long[] starts = new long[table.size()];
+        int n = 0;
+        for (int i = 0, size = table.size(); i < size; i++) {
+            Track t = table.getTrack(i);
+            if (selected == null || t == null || t == selected) {
+                starts[n++] = table.getStart(i) + shift;
             }
         }
+        return SyncAligner.onsets(starts, n);
+    }
 
+    private void fileOpen(File file) throws SubtitleException {
         inputFile = file;
         Matcher matcher = PATTERN_EXTENSION.matcher(file.getName());
         if (!matcher.find()) {
             throw new SubtitleException("File extension dose not exist. (" + file.getName() + ')');
         }
 
-        String subtitle = inputSubtitle.replaceAll(LINE_DELIMITER_WINDOWS, LINE_DELIMITER_UNIX);
-        switch (inputType = matcher.group(0).toLowerCase()) {
-            case FILE_EXTENSION_SAMI:
-                if (!loadingSAMI(subtitle)) {
-                    loadingAuto(subtitle);
-                }
-                break;
-            case FILE_EXTENSION_SUB_RIP:
-                if (!loadingSubRip(subtitle)) {
-                    loadingAuto(subtitle);
-                }
-                break;
+        boolean mapped = content == null && file.length() >= MAP_THRESHOLD;
+        if (mapped) {
+            try {
+                content = IO.map(file.toPath());
+            } catch (IOException e) {
+                throw new SubtitleException("File read error. (" + file.getName() + ')', e);
+            }
         }
-    }
 
-    private void loadingAuto(String text) {
-        if (loadingSAMI(text) || loadingSubRip(text)) {
-            return;
+        try {
+            Metrics.Span detect = Metrics.start(trace, Metrics.Stage.DETECT);
+            byte[] sample = readSample(file);
+            if (inputCharset == null) {
+                inputCharset = charsetDetector.detect(sample, 0, sample.length).getCharset();
+            }
+            List<SubtitleFormat> probed = probe(sample);
+            Metrics.stop(detect);
+
+            loadingSniffed(file, SubtitleFormats.forExtension(matcher.group(0)), probed);
+        } finally {
+            if (mapped) {
+                content = null;
+            }
         }
-        throw new SubtitleException("Unknown file type (" + inputFile.getName() + ')');
     }
 
-    private boolean loadingSAMI(String sami) {
-        sami = PATTERN_COMMENTS.matcher(sami).replaceAll("");
-        String[] split = PATTERN_SAMI.split(sami);
+    /**
+     * Start of the input, for charset detection and format probes.
+     */
+    private byte[] readSample(File file) throws SubtitleException {
+        if (content != null) {
+            ByteBuffer sample = content.duplicate();
+            byte[] bytes = new byte[Math.min(sample.remaining(), DefaultCharsetDetector.SAMPLE_SIZE)];
+            sample.get(bytes);
+            return bytes;
+        }
 
-        if (split.length < 2) {
-            return false;
+        byte[] bytes = new byte[DefaultCharsetDetector.SAMPLE_SIZE];
+        int length;
+        try (InputStream in = newInputStream(file.toPath())) {
+            length = IO.read(in, bytes);
+        } catch (IOException e) {
+            throw new SubtitleException("File read error. (" + file.getName() + ')', e);
         }
+        return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+    }
 
-        inputType = FILE_EXTENSION_SAMI;
+    /**
+     * @return formats accepting the start of the file decoded with the input charset, best first
+     */
+    private List<SubtitleFormat> probe(byte[] sample) {
+        CharBuffer prefix = CharBuffer.allocate(sample.length);
+        inputCharset.newDecoder().onMalformedInput(REPLACE).onUnmappableCharacter(REPLACE)
+            .decode(ByteBuffer.wrap(sample), prefix, true);
+        prefix.flip();
+        return SubtitleFormats.probe(prefix);
+    }
 
-        long start, end = 0;
-        String text = "";
-        subtitles = new ArrayList<>();
-        Subtitle subtitle = new Subtitle(TYPE_SAMI);
-        for (String sync : split) {
-            Matcher matcher;
-            if (!(matcher = PATTERN_SAMI_DATA.matcher(sync)).find()) {
-                continue;
+    /**
+     * Picks the format from the start of the file before parsing it. The extension wins when its
+     * format accepts the start or no format does, otherwise the best probe is parsed first. Only
+     * when that parse fails are the other formats tried, those the probes accept first.
+     *
+     * @param extension format of the file extension, or {@code null}
+     * @param probed    formats accepting the start of the file, see {@link #probe(byte[])}
+     */
+    private void loadingSniffed(File file, SubtitleFormat extension, List<SubtitleFormat> probed) {
+        SubtitleFormat sniffed = probed.isEmpty() || probed.contains(extension) ? extension : probed.get(0);
+        SubtitleFormats.sniffed(extension != null && sniffed != extension);
+        if (sniffed != null && loading(file, sniffed)) {
+            return;
+        }
+
+        SubtitleFormats.fallback();
+        for (SubtitleFormat format : probed) {
+            if (format != sniffed && loading(file, format)) {
+                return;
             }
+        }
+        for (SubtitleFormat format : SubtitleFormats.all()) {
+            if (format != sniffed && !probed.contains(format) && loading(file, format)) {
+                return;
+            }
+        }
+        throw new SubtitleException("Unknown file type (" + file.getName() + ')');
+    }
 
-            start = end;
-            end = parseLong(matcher.group(1));
+    private SubtitleReader openReader(File file, SubtitleFormat format) throws IOException {
+        Reader reader = content != null
+            ? IO.newReader(content.duplicate(), inputCharset)
+            : IO.newReader(FileChannel.open(file.toPath()), inputCharset);
+        if (regexParser && format.getType() == TYPE_SUB_RIP) {
+            return new SubRipRegexReader(reader, sync);
+        }
+        return format.newReader(reader, sync);
+    }
 
-            if (text.length() > 0) {
-                if (text.equals(subtitle.getText())) {
-                    subtitle.setEnd(end);
-                } else {
-                    if (subtitle.getEnd() > start) {
-                        subtitle.setEnd(end);
-                    }
-                    subtitle = new Subtitle(TYPE_SAMI, start, end, text, this.sync);
-                    subtitles.add(subtitle);
-                }
+    private boolean loading(File file, SubtitleFormat format) throws SubtitleException {
+        if (isParallel(file, format)) {
+            CueTable table = loadingParallel(file, format);
+            if (table != null) {
+                inputFormat = format;
+                cues = table.trim();
+                return true;
             }
+        }
 
-            text = matcher.group(2).trim();
+        CueTable table = new CueTable();
+        Metrics.Span parse = Metrics.start(trace, Metrics.Stage.PARSE);
+        try (SubtitleReader reader = openReader(file, format)) {
+            try {
+                for (Subtitle subtitle; (subtitle = reader.read()) != null; ) {
+                    table.add(subtitle);
+                }
+            } catch (ParseException e) {
+                throw new SubtitleException("Time parse error. (path: " + file.getName() + ", line: " + (reader.getCount() + 1) + ')', e);
+            }
+            Metrics.stop(parse);
+            if (!reader.isMatched()) {
+                return false;
+            }
+        } catch (IOException e) {
+            throw new SubtitleException("File read error. (" + file.getName() + ')', e);
         }
 
+        inputFormat = format;
+        cues = table.trim();
         return true;
     }
 
-    private boolean loadingSubRip(String srt) {
-        String[] split = PATTERN_SUB_RIP.split(srt);
-        if (split.length < 2) {
+    private boolean isParallel(File file, SubtitleFormat format) {
+        if (parseParallelism < 2 || !ParallelParser.supports(format.getType())
+            || regexParser && format.getType() == TYPE_SUB_RIP) {
             return false;
         }
+        return (content != null ? content.remaining() : file.length()) >= PARALLEL_THRESHOLD;
+    }
 
-        inputType = FILE_EXTENSION_SUB_RIP;
+    /**
+     * @return the cues, or {@code null} to parse on one thread
+     */
+    private CueTable loadingParallel(File file, SubtitleFormat format) throws SubtitleException {
+        CharBuffer text;
+        Metrics.Span decode = Metrics.start(trace, Metrics.Stage.DECODE);
+        try {
+            text = IO.decode(content != null ? content.duplicate() : IO.map(file.toPath()), inputCharset);
+        } catch (IOException e) {
+            throw new SubtitleException("File read error. (" + file.getName() + ')', e);
+        }
+        Metrics.stop(decode);
+        Metrics.Span parse = Metrics.start(trace, Metrics.Stage.PARSE);
+        CueTable table = ParallelParser.parse(text, format.getType(), sync, parseParallelism);
+        Metrics.stop(parse);
+        return table;
+    }
 
-        subtitles = new ArrayList<>();
-        for (String str : split) {
-            Matcher matcher = PATTERN_SUB_RIP_DATA.matcher(str);
-            if (matcher.find()) {
-                String text = matcher.group(3);
-                try {
-                    Matcher m;
-                    if ((m = PATTERN_SPACE.matcher(text)).find()) {
-                        text = m.replaceAll(" ");
-                    }
-                    if ((m = PATTERN_LEFT_TRIM.matcher(text)).find()) {
-                        text = m.replaceAll(LINE_DELIMITER_UNIX);
-                    }
-                    if ((m = PATTERN_RIGHT_TRIM.matcher(text)).find()) {
-                        text = m.replaceAll(LINE_DELIMITER_UNIX);
-                    }
-                    subtitles.add(new Subtitle(
-                        TYPE_SUB_RIP, formatSubRip.parse(matcher.group(1)),
-                        formatSubRip.parse(matcher.group(2)), text.trim(), sync
-                    ));
+    private void writeFile(File file, int type) throws SubtitleException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), CREATE, TRUNCATE_EXISTING, WRITE)) {
+            write(channel, type);
+        } catch (IOException e) {
+            throw new SubtitleException("File write error. (" + file.getName() + ')', e);
+        }
+        if (Metrics.ENABLED && trace != null) {
+            trace.written(file.length());
+        }
+    }
 
-                } catch (ParseException e) {
-                    throw new SubtitleException("Time parse error. (path: " + inputFile.getName() + ", line: " + (subtitles.size() + 1) + ')', e);
-                }
+    /**
+     * Renders the loaded subtitles to a channel with the output charset and closes it.
+     */
+    void write(WritableByteChannel channel, int type) throws IOException {
+        Metrics.Span render = Metrics.start(trace, Metrics.Stage.RENDER);
+        try (SubtitleWriter writer = newWriter(IO.newWriter(channel, outputCharset), type)) {
+            render(writer);
+        }
+        Metrics.stop(render);
+    }
+
+    SubtitleWriter newWriter(Writer writer, int type) throws IOException {
+        if (lineDelimiter == null) {
+            lineDelimiter = LINE_DELIMITER_WINDOWS;
+        }
+        return newWriter(writer, cues, type, lineDelimiter, sync);
+    }
+
+    /**
+     * SAMI of a selected track is written with its class, and SAMI of several tracks with all of them.
+     */
+    private SubtitleWriter newWriter(Writer writer, CueTable table, int type, String lineDelimiter, long sync) throws IOException {
+        if (type == TYPE_SAMI) {
+            Track selected = selectedTrack(table);
+            if (selected != null) {
+                return new SamiWriter(writer, lineDelimiter, selected).setSync(sync);
+            }
+            if (table.getTracks().size() > 1) {
+                return new SamiTracksWriter(writer, lineDelimiter, table.getTracks()).setSync(sync);
             }
         }
+        return format(type).newWriter(writer, lineDelimiter, inputCharset).setSync(sync);
+    }
 
-        return true;
+    private Track selectedTrack(CueTable table) {
+        return track == null ? null : table.findTrack(track);
     }
 
-    private void writeFile(File file, String subtitle) throws SubtitleException {
-        try (BufferedWriter writer = new BufferedWriter(
-            new OutputStreamWriter(newOutputStream(file.toPath()), outputCharset)
-        )) {
-            writer.write(subtitle);
-        } catch (IOException e) {
-            throw new SubtitleException("File write error. (" + file.getName() + ')', e);
+    private static SubtitleFormat format(int type) throws SubtitleException {
+        SubtitleFormat format = SubtitleFormats.forType(type);
+        if (format == null) {
+            throw new SubtitleException("Unknown output type(" + type + ')');
+        }
+        return format;
+    }
+
+    void render(SubtitleWriter writer) throws IOException {
+        render(cues, writer, sync);
+    }
+
+    /**
+     * Writes the cues of the clip window and of the selected track, and those of no track. Cues of
+     * several tracks are written in order of start time.
+     */
+    private void render(CueTable cues, SubtitleWriter writer, long sync) throws IOException {
+        render(clip(cues, sync), selectedTrack(cues), writer);
+    }
+
+    /**
+     * @param cues     cues of the clip window
+     * @param selected track of the cues before clipping, or {@code null}
+     */
+    private static void render(CueTable cues, Track selected, SubtitleWriter writer) throws IOException {
+        if (cues.getTracks().size() < 2) {
+            for (int i = 0, size = cues.size(); i < size; i++) {
+                writer.write(cues, i);
+            }
+            return;
+        }
+        for (int i : cues.byStart()) {
+            Track t = cues.getTrack(i);
+            if (selected == null || t == null || t == selected) {
+                writer.write(cues, i);
+            }
         }
     }
 
     public File writeSami() throws SubtitleException {
-        if (FILE_EXTENSION_SAMI.equals(inputType) && sync != 0L) {
-            throw new RuntimeException("Unsupported Type: " + inputFile.getName());
+        return write(TYPE_SAMI);
+    }
+
+    public File writeSubRip() throws SubtitleException {
+        return write(TYPE_SUB_RIP);
+    }
+
+    public File writeWebVtt() throws SubtitleException {
+        return write(TYPE_WEB_VTT);
+    }
+
+    /**
+     * Writes WebVTT segments of {@code duration} milliseconds for HLS, with the playlist named after
+     * the input. The segments are written as the cues are walked, see {@link WebVttSegmenter}.
+     *
+     * @return the playlist
+     */
+    public File writeWebVttSegments(long duration) throws SubtitleException {
+        return writeWebVttSegmentFiles(duration).get(0);
+    }
+
+    /**
+     * Playlist written by {@link #writeWebVttSegments(long)}.
+     */
+    File playlistFile() {
+        String name = PATTERN_EXTENSION.split(inputFile.getName(), 0)[0];
+        return new File(inputFile.getParent(), name + (isClipped() ? clipSuffix() + '.' : "") + "m3u8");
+    }
+
+    /**
+     * As {@link #writeWebVttSegments(long)}.
+     *
+     * @return the playlist and the segments
+     */
+    List<File> writeWebVttSegmentFiles(long duration) throws SubtitleException {
+        load();
+        File playlist = playlistFile();
+        WebVttSegmenter segmenter;
+        Metrics.Span render = Metrics.start(trace, Metrics.Stage.RENDER);
+        try {
+            segmenter = new WebVttSegmenter(playlist, duration,
+                lineDelimiter == null ? LINE_DELIMITER_WINDOWS : lineDelimiter).setSync(sync);
+            try {
+                Track selected = selectedTrack(cues);
+                CueTable table = clip(cues, sync);
+                for (int i : table.byStart()) {
+                    Track t = table.getTrack(i);
+                    if (selected == null || t == null || t == selected) {
+                        segmenter.write(table, i);
+                    }
+                }
+            } finally {
+                segmenter.close();
+            }
+        } catch (IOException e) {
+            throw new SubtitleException("File write error. (" + playlist.getName() + ')', e);
         }
+        Metrics.stop(render);
+        return segmenter.getFiles();
+    }
 
-        if (lineDelimiter == null) {
-            lineDelimiter = LINE_DELIMITER_WINDOWS;
+    /**
+     * Writes each language track to its own file, named with the language of the track, e.g.
+     * {@code movie.ko.srt} and {@code movie.en.srt}, in one walk over the cues. Cues of no track are
+     * written to every file. An input with less than two tracks is written as by {@link #write(int)}.
+     *
+     * @return the files, in the order of {@link #getTracks()}
+     */
+    public List<File> writeTracks(int outputType) throws SubtitleException {
+        load();
+        List<Track> tracks = cues.getTracks();
+        if (tracks.size() < 2) {
+            return Collections.singletonList(write(outputType));
         }
 
-        StringBuilder builder = new StringBuilder(
-            "<SAMI>\n<HEAD>\n<TITLE></TITLE>\n<STYLE><!--\np { font-family: sans-serif; text-align: center; }\n"
-        );
+        int type = outputType(outputType);
+        String delimiter = lineDelimiter == null ? LINE_DELIMITER_WINDOWS : lineDelimiter;
+        List<File> files = trackFiles(type);
+
+        SubtitleWriter[] writers = new SubtitleWriter[tracks.size()];
+        File file = null;
+        Metrics.Span render = Metrics.start(trace, Metrics.Stage.RENDER);
+        try {
+            for (int k = 0; k < writers.length; k++) {
+                file = files.get(k);
+                Writer writer = IO.newWriter(FileChannel.open(file.toPath(), CREATE, TRUNCATE_EXISTING, WRITE), outputCharset);
+                writers[k] = type == TYPE_SAMI
+                    ? new SamiWriter(writer, delimiter, tracks.get(k))
+                    : format(type).newWriter(writer, delimiter, inputCharset);
+                writers[k].setSync(sync);
+            }
+            file = null;
+            CueTable table = clip(cues, sync);
+            for (int i : table.byStart()) {
+                Track t = table.getTrack(i);
+                for (int k = 0; k < writers.length; k++) {
+                    if (t == null || t == tracks.get(k)) {
+                        writers[k].write(table, i);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new SubtitleException("File write error. (" + (file == null ? inputFile : file).getName() + ')', e);
+        } finally {
+            close(writers, files);
+        }
+        Metrics.stop(render);
+        if (Metrics.ENABLED && trace != null) {
+            for (File f : files) {
+                trace.written(f.length());
+            }
+        }
+        return files;
+    }
 
-        String p;
-        if (CHARSET_CP949.equals(inputCharset) ||
-            CHARSET_EUC_KR.equals(inputCharset)
-        ) {
-            builder.append(".KRCC { Name: Korean; lang: ko-KR; }\n");
-            p = "<P Class=KRCC>";
-        } else {
-            p = "<P>";
+    /**
+     * Files written by {@link #writeTracks(int)} for an input of several tracks, in the order of its tracks.
+     */
+    List<File> trackFiles(int outputType) throws SubtitleException {
+        int type = outputType(outputType);
+        List<Track> tracks = load().cues.getTracks();
+        List<File> files = new ArrayList<>(tracks.size());
+        Set<String> suffixes = new HashSet<>();
+        for (Track t : tracks) {
+            String suffix = t.getSuffix();
+            if (!suffixes.add(suffix)) {
+                suffixes.add(suffix = t.getClassName().toLowerCase(Locale.ROOT));
+            }
+            files.add(outputFile(type, suffix));
         }
+        return files;
+    }
 
-        builder.append("--></STYLE>\n</HEAD>\n<BODY>\n");
-        long end = 0;
-        for (final Subtitle item : subtitles) {
-            long e = item.getEnd();
-            if (e < 0L) {
+    private static void close(SubtitleWriter[] writers, List<File> files) throws SubtitleException {
+        SubtitleException exception = null;
+        for (int k = 0; k < writers.length; k++) {
+            if (writers[k] == null) {
                 continue;
             }
-            long start = item.getStart();
-            if (start != end && end != 0) {
-                builder.append("<SYNC Start=").append(end).append(">\n");
+            try {
+                writers[k].close();
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = new SubtitleException("File write error. (" + files.get(k).getName() + ')', e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Writes several inputs as one SAMI file with a language track for each, e.g. {@code movie.ko.srt}
+     * and {@code movie.en.srt} as {@code movie.smi} with KRCC and ENCC paragraphs. An input with
+     * tracks keeps them; the track of another is the language in its file name, or Korean for a
+     * Korean charset. The cues are merged in order of start time as they are written, each input with
+     * its own sync, and the file is written with the line delimiter and charset of the first input.
+     */
+    public static File writeSami(File output, List<Converter> inputs) throws SubtitleException {
+        if (inputs.isEmpty()) {
+            throw new SubtitleException("No input. (" + output.getName() + ')');
+        }
+
+        List<Track> tracks = new ArrayList<>();
+        Track[] assigned = new Track[inputs.size()];
+        int[][] orders = new int[inputs.size()][];
+        for (int n = 0; n < inputs.size(); n++) {
+            Converter input = inputs.get(n);
+            if (input.load().inputFile.getAbsoluteFile().equals(output.getAbsoluteFile())) {
+                throw new SubtitleException("Output is the input file. (" + output.getName() + ')');
+            }
+            List<Track> own = input.cues.getTracks();
+            if (own.isEmpty()) {
+                own = Collections.singletonList(assigned[n] = input.languageTrack(n));
+            }
+            for (Track t : own) {
+                for (Track other : tracks) {
+                    if (other.getClassName().equalsIgnoreCase(t.getClassName())) {
+                        throw new SubtitleException("Duplicate track " + t + ". (" + input.inputFile.getName() + ')');
+                    }
+                }
+                tracks.add(t);
+            }
+            orders[n] = input.cues.byStart();
+        }
+
+        Converter first = inputs.get(0);
+        String delimiter = first.lineDelimiter == null ? LINE_DELIMITER_WINDOWS : first.lineDelimiter;
+        try (SamiTracksWriter writer = new SamiTracksWriter(IO.newWriter(
+            FileChannel.open(output.toPath(), CREATE, TRUNCATE_EXISTING, WRITE), first.outputCharset
+        ), delimiter, tracks)) {
+            int[] positions = new int[inputs.size()];
+            for (; ; ) {
+                int next = -1;
+                long start = Long.MAX_VALUE;
+                for (int n = 0; n < inputs.size(); n++) {
+                    if (positions[n] < orders[n].length) {
+                        Converter input = inputs.get(n);
+                        long s = Math.max(input.cues.getStart(orders[n][positions[n]]) + input.sync, 0L);
+                        if (s < start) {
+                            start = s;
+                            next = n;
+                        }
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                Converter input = inputs.get(next);
+                int i = orders[next][positions[next]++];
+                Track t = assigned[next] != null ? assigned[next] : input.cues.getTrack(i);
+                writer.write(input.cues, i, t, start, Math.max(input.cues.getEnd(i) + input.sync, 0L));
+            }
+        } catch (IOException e) {
+            throw new SubtitleException("File write error. (" + output.getName() + ')', e);
+        }
+        return output;
+    }
+
+    /**
+     * Track of an input without tracks, from a language in its file name, {@code movie.en.srt}, or
+     * its charset.
+     */
+    private Track languageTrack(int index) {
+        String[] parts = inputFile.getName().split("\\.");
+        if (parts.length > 2) {
+            String lang = parts[parts.length - 2];
+            if (lang.matches("[A-Za-z]{2,3}(-[A-Za-z0-9]+)*")) {
+                return Track.forLanguage(lang);
             }
-            builder.append("<SYNC Start=").append(start).append(">\n").append(p).append(item.getSami()).append('\n');
-            end = e;
         }
+        if (CHARSET_CP949.equals(inputCharset) || "EUC-KR".equals(inputCharset.name())) {
+            return Track.KOREAN;
+        }
+        return new Track("TRACK" + (index + 1), null, null);
+    }
 
-        builder.append("<SYNC Start=").append(end).append(">\n</BODY>\n</SAMI>");
-        String text = builder.toString().trim();
+    /**
+     * Resolves the output type, choosing the other format when {@code outputType} is 0.
+     */
+    int outputType(int outputType) throws SubtitleException {
+        if (outputType != 0) {
+            return format(outputType).getType();
+        }
+        return otherType(inputFormat.getType());
+    }
 
-        if (LINE_DELIMITER_WINDOWS.equals(lineDelimiter)) {
-            text = text.replace(LINE_DELIMITER_UNIX, LINE_DELIMITER_WINDOWS);
+    /**
+     * Type written from {@code inputType} when no output type is set.
+     */
+    static int otherType(int inputType) {
+        return inputType == TYPE_SUB_RIP ? TYPE_SAMI : TYPE_SUB_RIP;
+    }
+
+    File outputFile(int type) {
+        if (type == inputFormat.getType() && (sync != 0L || retiming != null) && !isClipped()) {
+            return outputFile(type, "retimed");
         }
+        return outputFile(type, null);
+    }
 
+    /**
+     * @param suffix name part before the extension, or {@code null}; the clip window is added to it
+     */
+    private File outputFile(int type, String suffix) {
+        if (isClipped()) {
+            suffix = suffix == null ? clipSuffix() : suffix + '.' + clipSuffix();
+        }
+        String extension = format(type).getExtensions()[0];
         String name = PATTERN_EXTENSION.split(inputFile.getName(), 0)[0];
-        File file = new File(inputFile.getParent(), name + FILE_EXTENSION_SAMI);
+        return new File(inputFile.getParent(), suffix == null ? name + extension : name + suffix + '.' + extension);
+    }
 
-        writeFile(file, text);
+    Converter load() throws SubtitleException {
+        if (parsed != null && inputFormat.getType() == TYPE_SAMI && sync != loadedSync) {
+            // SAMI cue ends are joined with the sync applied, so a new sync needs a new read.
+            parsed = null;
+        }
+        if (parsed == null) {
+            read();
+            parsed = cues;
+            loadedRetiming = null;
+        }
+        if (retiming != loadedRetiming) {
+            cues = retiming == null ? parsed : parsed.retime(retiming);
+            loadedRetiming = retiming;
+        }
+        return this;
+    }
 
-        return file;
+    private void read() throws SubtitleException {
+        Charset requested = inputCharset;
+        if (cueCache != null) {
+            CueCache.Entry entry = cueCache.get(inputFile, requested, sync);
+            if (entry != null) {
+                cues = entry.cues;
+                inputFormat = entry.inputFormat;
+                inputCharset = entry.inputCharset;
+                loadedSync = entry.sync;
+                if (Metrics.ENABLED && trace != null) {
+                    trace.loaded(inputFormat, inputCharset, cues.size(), 0L);
+                }
+                return;
+            }
+        }
+
+        fileOpen(inputFile);
+        loadedSync = sync;
+        if (Metrics.ENABLED && trace != null) {
+            trace.loaded(inputFormat, inputCharset, cues.size(), content != null ? content.remaining() : inputFile.length());
+        }
+        if (cueCache != null) {
+            cueCache.put(inputFile, requested, new CueCache.Entry(cues, inputFormat, inputCharset, loadedSync));
+        }
     }
 
-    public File writeSubRip() throws SubtitleException {
-        if (FILE_EXTENSION_SUB_RIP.equals(inputType) && sync != 0L) {
-            throw new RuntimeException("Unsupported Type: " + inputFile.getName());
+    /**
+     * @return {@code true} if {@link #load()} would take the cues from the cache
+     */
+    boolean isCached() {
+        if (parsed != null) {
+            return inputFormat.getType() != TYPE_SAMI || sync == loadedSync;
         }
+        return cueCache != null && cueCache.contains(inputFile, inputCharset, sync);
+    }
+
+    private SubtitleFormat extensionFormat() {
+        Matcher matcher = PATTERN_EXTENSION.matcher(inputFile.getName());
+        return matcher.find() ? SubtitleFormats.forExtension(matcher.group(0)) : null;
+    }
+
+    /**
+     * @return {@code true} if the loaded file is in another format than its extension says
+     */
+    boolean isExtensionMismatch() {
+        return inputFormat != null && inputFormat != extensionFormat();
+    }
+
+    /**
+     * Loads from bytes already read from the input file instead of opening it again.
+     */
+    Converter load(byte[] content) throws SubtitleException {
+        this.content = ByteBuffer.wrap(content);
+        try {
+            return load();
+        } finally {
+            this.content = null;
+        }
+    }
+
+    CueTable getCues() {
+        return cues;
+    }
+
+    public File write(int outputType) throws SubtitleException {
+        load();
 
+        int type = outputType(outputType);
+        File file = outputFile(type);
+        writeFile(file, type);
+        return file;
+    }
+
+    public File write() throws SubtitleException {
+        return write(0);
+    }
+
+    /**
+     * Writes to the given file instead of next to the input, e.g. to write one input with several syncs.
+     */
+    public File write(int outputType, File output) throws SubtitleException {
+        load();
+        writeFile(output, outputType(outputType));
+        return output;
+    }
+
+    /**
+     * Writes every target from one parse. Each format is rendered once for each line delimiter and
+     * sync, each rendering is encoded once for each charset, and the files are written in parallel.
+     * The cues of each sync are read and clipped before, so the tasks share no state of the converter.
+     *
+     * @return the files, in the order of the targets
+     */
+    public List<File> write(List<OutputTarget> targets) throws SubtitleException {
+        load();
         if (lineDelimiter == null) {
             lineDelimiter = LINE_DELIMITER_WINDOWS;
         }
 
-        int i = 0;
-        StringBuilder builder = new StringBuilder();
-        for (final Subtitle item : subtitles) {
-            long end = item.getEnd();
-            if (end < 0L) {
-                continue;
+        List<File> files = new ArrayList<>(targets.size());
+        Set<File> distinct = new HashSet<>();
+        for (OutputTarget target : targets) {
+            File file = target.getFile() != null
+                ? target.getFile() : outputFile(outputType(target.getType()), target.getSuffix());
+            if (file.getAbsoluteFile().equals(inputFile.getAbsoluteFile())) {
+                throw new SubtitleException("Output is the input file. (" + file.getName() + ')');
             }
-            String text = item.getPlain();
-            if (text.length() < 1) {
-                continue;
+            if (!distinct.add(file.getAbsoluteFile())) {
+                throw new SubtitleException("Duplicate output file. (" + file.getName() + ')');
             }
-            builder.append(++i).append('\n').append(formatSubRip.format(new Date(item.getStart()))).append(" --> ")
-                .append(formatSubRip.format(new Date(end))).append('\n').append(text).append("\n\n");
+            files.add(file);
         }
 
-        String text = builder.toString().trim();
-
-        if (LINE_DELIMITER_WINDOWS.equals(lineDelimiter)) {
-            text = text.replace(LINE_DELIMITER_UNIX, LINE_DELIMITER_WINDOWS);
+        Map<Long, CueTable> tables = new HashMap<>();
+        Map<Long, CueTable> clipped = new HashMap<>();
+        for (OutputTarget target : targets) {
+            long targetSync = target.getSync() == null ? sync : target.getSync();
+            if (!tables.containsKey(targetSync)) {
+                CueTable table = cues(targetSync);
+                tables.put(targetSync, table);
+                clipped.put(targetSync, clip(table, targetSync));
+            }
         }
 
-        String name = PATTERN_EXTENSION.split(inputFile.getName(), 0)[0];
-        File file = new File(inputFile.getParent(), name + FILE_EXTENSION_SUB_RIP);
-
-        writeFile(file, text);
+        List<Metrics.Trace> traces = new ArrayList<>();
+        Map<String, CompletableFuture<CharBuffer>> renderings = new HashMap<>();
+        Map<String, CompletableFuture<ByteBuffer>> encodings = new HashMap<>();
+        CompletableFuture<?>[] writes = new CompletableFuture<?>[targets.size()];
+        for (int i = 0; i < writes.length; i++) {
+            OutputTarget target = targets.get(i);
+            int type = outputType(target.getType());
+            String delimiter = target.getLineDelimiter() == null ? lineDelimiter : target.getLineDelimiter();
+            long targetSync = target.getSync() == null ? sync : target.getSync();
+            Charset charset = target.getCharset() == null ? outputCharset : target.getCharset();
+            CueTable table = tables.get(targetSync);
+            CueTable window = clipped.get(targetSync);
+            File file = files.get(i);
+
+            String key = type + "\t" + targetSync + '\t' + delimiter;
+            CompletableFuture<CharBuffer> rendering = renderings.computeIfAbsent(key, k -> {
+                Metrics.Trace t = taskTrace(traces);
+                return CompletableFuture.supplyAsync(() -> render(table, window, type, delimiter, targetSync, t));
+            });
+            CompletableFuture<ByteBuffer> encoding = encodings.computeIfAbsent(key + '\t' + charset.name(), k -> {
+                Metrics.Trace t = taskTrace(traces);
+                return rendering.thenApplyAsync(chars -> encode(chars, charset, t));
+            });
+            Metrics.Trace t = taskTrace(traces);
+            writes[i] = encoding.thenAcceptAsync(bytes -> writeBytes(file, bytes.duplicate(), t));
+        }
 
-        return file;
+        try {
+            CompletableFuture.allOf(writes).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SubtitleException) {
+                throw (SubtitleException) e.getCause();
+            }
+            throw new SubtitleException("File write error. (" + inputFile.getName() + ')', e.getCause());
+        } finally {
+            if (trace != null) {
+                for (Metrics.Trace t : traces) {
+                    trace.add(t);
+                }
+            }
+        }
+        return files;
     }
 
-    public File write(int outputType) throws SubtitleException {
-        if (subtitles == null) {
-            fileOpen(inputFile);
+    /**
+     * Cues read with {@code sync}. SAMI cue ends are joined with the sync applied, so another sync
+     * is read by a copy of this converter, leaving this one as loaded.
+     */
+    private CueTable cues(long sync) throws SubtitleException {
+        if (inputFormat.getType() != TYPE_SAMI || sync == loadedSync) {
+            return cues;
         }
+        return new Converter(inputFile)
+            .setInputCharset(inputCharset)
+            .setCharsetDetector(charsetDetector)
+            .setRegexParser(regexParser)
+            .setParseParallelism(parseParallelism)
+            .setCueCache(cueCache)
+            .setRetiming(retiming)
+            .setTrace(trace)
+            .setSync(sync)
+            .load().cues;
+    }
 
-        switch (outputType) {
-            case TYPE_SAMI:
-                return writeSami();
-            case TYPE_SUB_RIP:
-                return writeSubRip();
+    /**
+     * A trace of its own for a task of {@link #write(List)}, added to that of the converter when all are done.
+     */
+    private Metrics.Trace taskTrace(List<Metrics.Trace> traces) {
+        Metrics.Trace t = trace == null ? null : Metrics.newTrace();
+        if (t != null) {
+            traces.add(t);
         }
+        return t;
+    }
 
-        switch (inputType) {
-            case FILE_EXTENSION_SAMI:
-                return writeSubRip();
-            case FILE_EXTENSION_SUB_RIP:
-                return writeSami();
+    /**
+     * @param window the cues of {@code table} in the clip window
+     */
+    private CharBuffer render(CueTable table, CueTable window, int type, String lineDelimiter, long sync,
+                              Metrics.Trace trace) {
+        Metrics.Span render = Metrics.start(trace, Metrics.Stage.RENDER);
+        CharArrayWriter chars = new CharArrayWriter(window.size() * 64 + 256);
+        try (SubtitleWriter writer = newWriter(chars, table, type, lineDelimiter, sync)) {
+            render(window, selectedTrack(table), writer);
+        } catch (IOException e) {
+            throw new SubtitleException("Render error. (" + inputFile.getName() + ')', e);
         }
+        CharBuffer rendered = CharBuffer.wrap(chars.toCharArray());
+        Metrics.stop(render);
+        return rendered;
+    }
 
-        throw new SubtitleException("Unknown output type(" + outputType + ')');
+    private static ByteBuffer encode(CharBuffer chars, Charset charset, Metrics.Trace trace) {
+        Metrics.Span encode = Metrics.start(trace, Metrics.Stage.ENCODE);
+        ByteBuffer bytes;
+        try {
+            bytes = charset.newEncoder().onMalformedInput(REPLACE).onUnmappableCharacter(REPLACE).encode(chars.duplicate());
+        } catch (CharacterCodingException e) {
+            throw new SubtitleException("Encoding error. (" + charset.name() + ')', e);
+        }
+        Metrics.stop(encode);
+        return bytes;
     }
 
-    public File write() throws SubtitleException {
-        return write(0);
+    private static void writeBytes(File file, ByteBuffer bytes, Metrics.Trace trace) {
+        Metrics.Span write = Metrics.start(trace, Metrics.Stage.WRITE);
+        int length = bytes.remaining();
+        try (FileChannel channel = FileChannel.open(file.toPath(), CREATE, TRUNCATE_EXISTING, WRITE)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new SubtitleException("File write error. (" + file.getName() + ')', e);
+        }
+        Metrics.stop(write);
+        if (Metrics.ENABLED && trace != null) {
+            trace.written(length);
+        }
     }
 
 }
@@ -0,0 +1,209 @@
+package myhyuny.subtitle;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parsed cues of recently loaded files, so that writing one input in several formats or with
+ * several syncs parses it once. Files are told apart by path, size and modification time and by
+ * the requested input charset. Cues of a format that joins them with the sync applied, SAMI, are
+ * kept for each sync they were read with, others once for every sync. The cache is bounded by the
+ * approximate heap size of the cues and drops the least recently used files first. It may be shared between threads.
+ *
+ * @author Hyunmin Kang
+ */
+public class CueCache {
+
+    static final long DEFAULT_MAX_BYTES = Long.getLong("subtitle.cache.maxBytes", 64L * 1024 * 1024);
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0L;
+    private long hits = 0L;
+    private long misses = 0L;
+    private long evictions = 0L;
+
+    public CueCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Cache of {@code subtitle.cache.maxBytes}, 64 MB by default.
+     */
+    public CueCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @param charset requested input charset, {@code null} when it is detected
+     * @param sync    sync the file is to be read with
+     * @return the cues, or {@code null}
+     */
+    synchronized Entry get(File file, Charset charset, long sync) {
+        Entry entry = find(file, charset, sync);
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    synchronized boolean contains(File file, Charset charset, long sync) {
+        return find(file, charset, sync) != null;
+    }
+
+    /**
+     * Looks under no sync first, where the format is not known yet, then under the sync.
+     */
+    private Entry find(File file, Charset charset, long sync) {
+        Entry entry = entries.get(new Key(file, charset, 0L));
+        if ((entry == null || !entry.matches(sync)) && sync != 0L) {
+            entry = entries.get(new Key(file, charset, sync));
+        }
+        return entry != null && entry.matches(sync) ? entry : null;
+    }
+
+    /**
+     * @param charset requested input charset, {@code null} when it was detected
+     */
+    synchronized void put(File file, Charset charset, Entry entry) {
+        Key key = new Key(file, charset, entry.isSyncJoined() ? entry.sync : 0L);
+        long size = entry.cues.getMemorySize();
+        if (size > maxBytes) {
+            return;
+        }
+
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.cues.getMemorySize();
+        }
+        bytes += size;
+
+        for (Iterator<Map.Entry<Key, Entry>> i = entries.entrySet().iterator(); bytes > maxBytes && i.hasNext(); ) {
+            bytes -= i.next().getValue().cues.getMemorySize();
+            i.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0L;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "files: " + entries.size() + ", bytes: " + bytes + ", hits: " + hits + ", misses: " + misses
+            + ", evictions: " + evictions;
+    }
+
+    private static final class Key {
+
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final String charset;
+        private final long sync;
+
+        /**
+         * @param charset requested input charset, {@code null} when it is detected
+         * @param sync    sync the file is read with, which changes how SAMI cue ends are joined
+         */
+        Key(File file, Charset charset, long sync) {
+            this.path = file.getAbsolutePath();
+            this.size = file.length();
+            this.modified = file.lastModified();
+            this.charset = charset == null ? "" : charset.name();
+            this.sync = sync;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return size == key.size && modified == key.modified && sync == key.sync
+                && path.equals(key.path) && charset.equals(key.charset);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = path.hashCode();
+            result = 31 * result + Long.hashCode(size);
+            result = 31 * result + Long.hashCode(modified);
+            result = 31 * result + charset.hashCode();
+            result = 31 * result + Long.hashCode(sync);
+            return result;
+        }
+
+    }
+
+    /**
+     * Cues with what the converter learned while loading them.
+     */
+    static final class Entry {
+
+        final CueTable cues;
+        final SubtitleFormat inputFormat;
+        final Charset inputCharset;
+        final long sync;
+
+        /**
+         * @param sync sync the cues were read with
+         */
+        Entry(CueTable cues, SubtitleFormat inputFormat, Charset inputCharset, long sync) {
+            this.cues = cues;
+            this.inputFormat = inputFormat;
+            this.inputCharset = inputCharset;
+            this.sync = sync;
+        }
+
+        /**
+         * @return {@code true} if the cue ends were joined with the sync applied
+         */
+        boolean isSyncJoined() {
+            return inputFormat.getType() == Subtitle.TYPE_SAMI;
+        }
+
+        /**
+         * @return {@code true} if the cues are those of a read with {@code sync}
+         */
+        boolean matches(long sync) {
+            return !isSyncJoined() || this.sync == sync;
+        }
+
+    }
+
+}
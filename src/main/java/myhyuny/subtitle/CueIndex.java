@@ -0,0 +1,78 @@
+package myhyuny.subtitle;
+
+import java.util.Arrays;
+
+/**
+ * Time index of a {@link CueTable}: the cues in order of start time with the running maximum of
+ * their ends. A query binary-searches the last cue starting before the end of its window and walks
+ * back only while an earlier cue can still reach the window, so overlapping cues are found without
+ * a scan of the table. Times are those of the table, without the sync.
+ *
+ * @author Hyunmin Kang
+ */
+final class CueIndex {
+
+    private final CueTable cues;
+    private final int[] order;
+    private final long[] starts;
+    private final long[] maxEnds;
+
+    CueIndex(CueTable cues) {
+        this.cues = cues;
+        order = cues.byStart();
+        starts = new long[order.length];
+        maxEnds = new long[order.length];
+        long maxEnd = Long.MIN_VALUE;
+        for (int p = 0; p < order.length; p++) {
+            starts[p] = cues.getStart(order[p]);
+            maxEnd = Math.max(maxEnd, cues.getEnd(order[p]));
+            maxEnds[p] = maxEnd;
+        }
+    }
+
+    CueTable getCues() {
+        return cues;
+    }
+
+    /**
+     * @return cues showing at {@code time}, in order of start time
+     */
+    int[] at(long time) {
+        return overlapping(time, time + 1);
+    }
+
+    /**
+     * @return cues showing at some time from {@code from} to before {@code to}, in order of start time
+     */
+    int[] overlapping(long from, long to) {
+        // Last position starting before to.
+        int low = 0;
+        int high = starts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < to) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        int[] found = new int[8];
+        int size = 0;
+        for (int p = low - 1; p >= 0 && maxEnds[p] > from; p--) {
+            if (cues.getEnd(order[p]) > from) {
+                if (size == found.length) {
+                    found = Arrays.copyOf(found, size * 2);
+                }
+                found[size++] = order[p];
+            }
+        }
+
+        int[] indices = new int[size];
+        for (int k = 0; k < size; k++) {
+            indices[k] = found[size - 1 - k];
+        }
+        return indices;
+    }
+
+}
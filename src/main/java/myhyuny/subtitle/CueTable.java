@@ -0,0 +1,354 @@
+package myhyuny.subtitle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loaded cues stored by column: start and end times in {@code long} arrays, the source type of
+ * each cue in a {@code byte} array, read unsigned, and the texts one after another in a shared {@code char}
+ * arena. Times are stored without the sync, which the writer adds, so one table can be written
+ * with several syncs. WebVTT cue settings and SAMI language tracks get a column once a cue has them,
+ * a track as its index in the track list.
+ *
+ * @author Hyunmin Kang
+ */
+public final class CueTable {
+
+    private int size = 0;
+    private long[] starts;
+    private long[] ends;
+    private byte[] types;
+    private int[] offsets;
+    private char[] arena;
+    private String[] settings;
+    private byte[] trackIds;
+    private final List<Track> tracks = new ArrayList<>(2);
+
+    CueTable() {
+        this(64, 4096);
+    }
+
+    CueTable(int cues, int chars) {
+        starts = new long[cues];
+        ends = new long[cues];
+        types = new byte[cues];
+        offsets = new int[cues + 1];
+        arena = new char[chars];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    void add(Subtitle subtitle) {
+        add(subtitle.getType(), subtitle.getRawStart(), subtitle.getRawEnd(), subtitle.getText(),
+            subtitle.getSettings(), subtitle.getTrack()
+        );
+    }
+
+    void add(int type, long start, long end, CharSequence text) {
+        add(type, start, end, text, null, null);
+    }
+
+    void add(int type, long start, long end, CharSequence text, String settings, Track track) {
+        if (size == starts.length) {
+            int capacity = size + (size >> 1) + 1;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            types = Arrays.copyOf(types, capacity);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+            if (this.settings != null) {
+                this.settings = Arrays.copyOf(this.settings, capacity);
+            }
+            if (trackIds != null) {
+                trackIds = Arrays.copyOf(trackIds, capacity);
+            }
+        }
+        if (settings != null) {
+            if (this.settings == null) {
+                this.settings = new String[starts.length];
+            }
+            this.settings[size] = settings;
+        }
+        if (track != null) {
+            if (trackIds == null) {
+                trackIds = new byte[starts.length];
+            }
+            trackIds[size] = (byte) trackId(track);
+        }
+
+        int offset = offsets[size];
+        int length = text.length();
+        if (arena.length - offset < length) {
+            arena = Arrays.copyOf(arena, Math.max(offset + length, arena.length + (arena.length >> 1)));
+        }
+        if (text instanceof String) {
+            ((String) text).getChars(0, length, arena, offset);
+        } else {
+            for (int i = 0; i < length; i++) {
+                arena[offset + i] = text.charAt(i);
+            }
+        }
+
+        starts[size] = start;
+        ends[size] = end;
+        types[size] = (byte) type;
+        offsets[++size] = offset + length;
+    }
+
+    /**
+     * Adds the cues of {@code other} after those of this table.
+     */
+    void addAll(CueTable other) {
+        int n = other.size;
+        int chars = other.offsets[n];
+        if (starts.length - size < n) {
+            int capacity = size + n;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            types = Arrays.copyOf(types, capacity);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+            if (settings != null) {
+                settings = Arrays.copyOf(settings, capacity);
+            }
+            if (trackIds != null) {
+                trackIds = Arrays.copyOf(trackIds, capacity);
+            }
+        }
+        int offset = offsets[size];
+        if (arena.length - offset < chars) {
+            arena = Arrays.copyOf(arena, offset + chars);
+        }
+
+        System.arraycopy(other.starts, 0, starts, size, n);
+        System.arraycopy(other.ends, 0, ends, size, n);
+        System.arraycopy(other.types, 0, types, size, n);
+        System.arraycopy(other.arena, 0, arena, offset, chars);
+        for (int i = 0; i < n; i++) {
+            offsets[size + i + 1] = offset + other.offsets[i + 1];
+        }
+        if (other.settings != null) {
+            if (settings == null) {
+                settings = new String[starts.length];
+            }
+            System.arraycopy(other.settings, 0, settings, size, n);
+        }
+        if (other.trackIds != null) {
+            if (trackIds == null) {
+                trackIds = new byte[starts.length];
+            }
+            for (int i = 0; i < n; i++) {
+                int id = other.trackIds[i] & 0xff;
+                trackIds[size + i] = (byte) (id == 0 ? 0 : trackId(other.tracks.get(id - 1)));
+            }
+        }
+        size += n;
+    }
+
+    /**
+     * @return chars of all texts
+     */
+    int getTextLength() {
+        return offsets[size];
+    }
+
+    private int trackId(Track track) {
+        int id = tracks.indexOf(track);
+        if (id < 0) {
+            if (tracks.size() == 255) {
+                throw new SubtitleException("Too many tracks. (" + track + ')');
+            }
+            tracks.add(track);
+            id = tracks.size() - 1;
+        }
+        return id + 1;
+    }
+
+    /**
+     * Drops the spare capacity left after loading.
+     */
+    CueTable trim() {
+        starts = Arrays.copyOf(starts, size);
+        ends = Arrays.copyOf(ends, size);
+        types = Arrays.copyOf(types, size);
+        offsets = Arrays.copyOf(offsets, size + 1);
+        arena = Arrays.copyOf(arena, offsets[size]);
+        if (settings != null) {
+            settings = Arrays.copyOf(settings, size);
+        }
+        if (trackIds != null) {
+            trackIds = Arrays.copyOf(trackIds, size);
+        }
+        return this;
+    }
+
+    /**
+     * Copy of the table with every time mapped by {@code retiming}, for writing. Only the time
+     * columns are new, the texts and the other columns are shared.
+     */
+    CueTable retime(Retiming retiming) {
+        CueTable table = new CueTable(0, 0);
+        table.size = size;
+        table.starts = new long[size];
+        table.ends = new long[size];
+        for (int i = 0; i < size; i++) {
+            table.starts[i] = retiming.apply(starts[i]);
+            table.ends[i] = retiming.apply(ends[i]);
+        }
+        table.types = types;
+        table.offsets = offsets;
+        table.arena = arena;
+        table.settings = settings;
+        table.trackIds = trackIds;
+        table.tracks.addAll(tracks);
+        return table;
+    }
+
+    /**
+     * Approximate heap size of the table in bytes.
+     */
+    long getMemorySize() {
+        long bytes = 96L + starts.length * 17L + offsets.length * 4L + arena.length * 2L + tracks.size() * 64L;
+        if (trackIds != null) {
+            bytes += trackIds.length;
+        }
+        if (settings != null) {
+            bytes += settings.length * 4L;
+            for (String s : settings) {
+                if (s != null) {
+                    bytes += 40L + s.length() * 2L;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    public int getType(int index) {
+        return types[index] & 0xFF;
+    }
+
+    /**
+     * Start time without the sync, see {@link SubtitleWriter#getStart(CueTable, int)}.
+     */
+    public long getStart(int index) {
+        return starts[index];
+    }
+
+    /**
+     * End time without the sync, see {@link SubtitleWriter#getEnd(CueTable, int)}.
+     */
+    public long getEnd(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @return WebVTT cue settings, or {@code null}
+     */
+    public String getSettings(int index) {
+        return settings == null ? null : settings[index];
+    }
+
+    /**
+     * @return SAMI language track, or {@code null} for a cue of every track
+     */
+    public Track getTrack(int index) {
+        return trackIds == null || trackIds[index] == 0 ? null : tracks.get((trackIds[index] & 0xff) - 1);
+    }
+
+    /**
+     * Tracks of the cues, in order of their first cue. Empty for formats without tracks.
+     */
+    public List<Track> getTracks() {
+        return Collections.unmodifiableList(tracks);
+    }
+
+    /**
+     * @return the track {@code selector} names, see {@link Track#matches(String)}, or {@code null}
+     */
+    Track findTrack(String selector) {
+        for (Track track : tracks) {
+            if (track.matches(selector)) {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Indices of the cues in order of start time, in table order for equal starts. The cues of
+     * several tracks are each in order but not together.
+     */
+    int[] byStart() {
+        int[] indices = new int[size];
+        boolean sorted = true;
+        for (int i = 0; i < size; i++) {
+            indices[i] = i;
+            sorted &= i == 0 || starts[i - 1] <= starts[i];
+        }
+        if (!sorted) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (x, y) -> Long.compare(starts[x], starts[y]));
+            for (int i = 0; i < size; i++) {
+                indices[i] = order[i];
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Points {@code text} at the text of a cue, so that the cues can be walked without copying.
+     */
+    public Text getText(int index, Text text) {
+        text.arena = arena;
+        text.offset = offsets[index];
+        text.length = offsets[index + 1] - text.offset;
+        return text;
+    }
+
+    /**
+     * Cue as a {@link Subtitle}, copying its text.
+     */
+    Subtitle get(int index) {
+        int offset = offsets[index];
+        return new Subtitle(getType(index), starts[index], ends[index],
+            new String(arena, offset, offsets[index + 1] - offset), 0L
+        ).setSettings(getSettings(index)).setTrack(getTrack(index));
+    }
+
+    /**
+     * Reusable view of one cue's text in the arena.
+     */
+    public static final class Text implements CharSequence {
+
+        private char[] arena;
+        private int offset;
+        private int length;
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return arena[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(arena, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(arena, offset, length);
+        }
+
+    }
+
+}
@@ -4,13 +4,10 @@ import static java.awt.EventQueue.invokeLater;
 import static java.lang.Math.round;
 import static java.nio.charset.Charset.availableCharsets;
 import static java.util.Collections.singletonList;
-import static java.util.concurrent.ForkJoinPool.commonPool;
 import static java.util.stream.Collectors.toList;
 import static myhyuny.subtitle.Converter.LINE_DELIMITER_UNIX;
 import static myhyuny.subtitle.Converter.LINE_DELIMITER_WINDOWS;
 import static myhyuny.subtitle.Converter.PATTERN_FILE_EXTENSION;
-import static myhyuny.subtitle.Subtitle.TYPE_SAMI;
-import static myhyuny.subtitle.Subtitle.TYPE_SUB_RIP;
 
 import javax.swing.JLabel;
 import javax.swing.JProgressBar;
@@ -55,7 +52,6 @@ import java.util.regex.Pattern;
 public class MainFrame extends Frame {
 
     private static final String CHARSET_AUTO = "Auto (Unicode Or System Default)";
-    private static final String OUTPUT_TYPE_SAMI = "SAMI (smi)";
     private static final String OUTPUT_TYPE_SUB_RIP = "SubRip (srt)";
 
     private static final String LINE_DELIMITER_TYPE_UNIX = "Unix";
@@ -66,6 +62,7 @@ public class MainFrame extends Frame {
     private static final Pattern PATTERN_SYNC = Pattern.compile("-?\\d+\\.?\\d*");
 
     private final Preferences preferences = Preferences.userNodeForPackage(getClass());
+    private final CueCache cueCache = new CueCache();
 
     private final MenuItem menuItemOpenFile = new MenuItem("Open File...", new MenuShortcut(KeyEvent.VK_O));
 
@@ -114,8 +111,9 @@ public class MainFrame extends Frame {
         setResizable(false);
         setLayout(new BorderLayout());
 
-        outTypeChoice.add(OUTPUT_TYPE_SAMI);
-        outTypeChoice.add(OUTPUT_TYPE_SUB_RIP);
+        for (SubtitleFormat format : SubtitleFormats.all()) {
+            outTypeChoice.add(outputTypeName(format));
+        }
         inputCharsetChoice.add(CHARSET_AUTO);
         for (Map.Entry<String, Charset> entry : availableCharsets().entrySet()) {
             inputCharsetChoice.add(entry.getKey());
@@ -255,15 +253,18 @@ public class MainFrame extends Frame {
     }
 
     private int outputType(String type) {
-        switch (type) {
-            case OUTPUT_TYPE_SAMI:
-                return TYPE_SAMI;
-            case OUTPUT_TYPE_SUB_RIP:
-                return TYPE_SUB_RIP;
+        for (SubtitleFormat format : SubtitleFormats.all()) {
+            if (outputTypeName(format).equals(type)) {
+                return format.getType();
+            }
         }
         return 0;
     }
 
+    private static String outputTypeName(SubtitleFormat format) {
+        return format.getName() + " (" + format.getExtensions()[0] + ')';
+    }
+
     private float parseFloat(String str) {
         Matcher matcher = PATTERN_SYNC.matcher(str);
         return matcher.find()
@@ -293,31 +294,46 @@ public class MainFrame extends Frame {
         int outputType = outputType(outTypeChoice.getSelectedItem());
         long sync = (long) (parseFloat(syncTextField.getText()) * 1000);
 
-        commonPool().execute(() -> {
-            String message = "Success";
-            try {
-                list.parallelStream().forEach((file) -> {
-                    new Converter(file)
-                        .setInputCharset(inputCharset)
-                        .setOutputCharset(outputCharset)
-                        .setLineDelimiter(lineDelimiter)
-                        .setSync(sync)
-                        .write(outputType);
+        BatchConverter converter = new BatchConverter()
+            .setInputCharset(inputCharset)
+            .setOutputCharset(outputCharset)
+            .setLineDelimiter(lineDelimiter)
+            .setSync(sync)
+            .setOutputType(outputType)
+            .setCueCache(cueCache)
+            .setListener(new BatchConverter.Listener() {
+                @Override
+                public void converted(File input, File output) {
                     invokeLater(() -> progressBar.setValue(progressBar.getValue() + 1));
-                });
-            } catch (SubtitleException e) {
+                }
+
+                @Override
+                public void failed(File input, RuntimeException e) {
+                    e.printStackTrace();
+                    invokeLater(() -> progressBar.setValue(progressBar.getValue() + 1));
+                }
+            });
+
+        Thread thread = new Thread(() -> {
+            BatchReport report = converter.convert(list);
+            try {
+                Metrics.export();
+            } catch (IOException e) {
                 e.printStackTrace();
-                message = "Error " + e.getMessage();
             }
+            String message = report.getFailed() < 1
+                ? "Success"
+                : "Error " + report.getFailures().get(0).getException().getMessage();
 
-            String m = message;
             invokeLater(() -> {
                 progressBar.setValue(0);
-                statusLabel.setText(m);
+                statusLabel.setText(message);
                 setEnabled(true);
                 run = false;
             });
-        });
+        }, "subtitle-batch");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     public void exit() {
@@ -0,0 +1,386 @@
+package myhyuny.subtitle;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+import com.sun.management.ThreadMXBean;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Stage times, counters and allocation of conversions. Each file carries a {@link Trace} through
+ * its stages, which is added to the totals of its format and charset when the file is done, see
+ * {@link #record(Trace, File, Throwable)}. A file done is appended as a JSON line to
+ * {@code subtitle.metrics.jsonl}, and the totals are written in the Prometheus text format to
+ * {@code subtitle.metrics.prometheus} by {@link #export()}.
+ * <p>
+ * Stages that run in one pass are timed together: a file parsed from a stream is read and decoded
+ * in {@link Stage#PARSE}, and SAMI markup is taken out as the cues are written, in {@link Stage#RENDER},
+ * which also encodes unless the output is encoded on its own. Allocation is counted on the thread
+ * that ran the stage, so the pool threads of a parallel parse are not in it. A stage that fails is
+ * not timed.
+ * <p>
+ * Recording is on unless {@code subtitle.metrics} is {@code false}. The flag is a constant, so a
+ * disabled run compiles the checks away and makes no traces.
+ *
+ * @author Hyunmin Kang
+ */
+final class Metrics {
+
+    static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("subtitle.metrics"));
+
+    private static final String JSONL = System.getProperty("subtitle.metrics.jsonl");
+    private static final String PROMETHEUS = System.getProperty("subtitle.metrics.prometheus");
+    private static final long EXPORT_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+    private static final String UNKNOWN = "unknown";
+
+    private static final ThreadMXBean THREADS = threads();
+    private static final Stage[] STAGES = Stage.values();
+    private static final LongAdder[] STAGE_NANOS = adders();
+    private static final LongAdder[] STAGE_ALLOCATED = adders();
+    private static final LongAdder[] STAGE_COUNTS = adders();
+    private static final Map<String, Totals> TOTALS = new ConcurrentHashMap<>();
+    private static final AtomicLong EXPORTED = new AtomicLong(System.nanoTime());
+    private static volatile IOException exportError;
+
+    private Metrics() {
+    }
+
+    enum Stage {
+        READ, DETECT, DECODE, PARSE, RENDER, ENCODE, WRITE;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static ThreadMXBean threads() {
+        if (!ENABLED || !(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean)) {
+            return null;
+        }
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        try {
+            if (threads.isThreadAllocatedMemorySupported() && !threads.isThreadAllocatedMemoryEnabled()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            return null;
+        }
+        return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ? threads : null;
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Stage.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, or -1 if unknown, e.g. on a virtual thread
+     */
+    private static long allocated() {
+        return THREADS == null ? -1L : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return a new trace, or {@code null} when recording is off
+     */
+    static Trace newTrace() {
+        return ENABLED ? new Trace() : null;
+    }
+
+    /**
+     * Starts timing a stage on the current thread.
+     *
+     * @return the span to {@link #stop(Span)}, or {@code null} without a trace
+     */
+    static Span start(Trace trace, Stage stage) {
+        return ENABLED && trace != null ? new Span(trace, stage) : null;
+    }
+
+    static void stop(Span span) {
+        if (ENABLED && span != null) {
+            span.stop();
+        }
+    }
+
+    /**
+     * Adds a finished file to the totals and appends its JSON line.
+     *
+     * @param error the failure, or {@code null}
+     */
+    static void record(Trace trace, File input, Throwable error) {
+        if (!ENABLED || trace == null) {
+            return;
+        }
+        for (int i = 0; i < STAGES.length; i++) {
+            STAGE_NANOS[i].add(trace.nanos.get(i));
+            STAGE_ALLOCATED[i].add(trace.allocated.get(i));
+            STAGE_COUNTS[i].add(trace.counts.get(i));
+        }
+        Totals totals = TOTALS.computeIfAbsent(trace.format + '\t' + trace.charset, k -> new Totals());
+        totals.files.increment();
+        if (error != null) {
+            totals.errors.increment();
+        }
+        totals.cues.add(trace.cues);
+        totals.read.add(trace.read);
+        totals.written.add(trace.written.get());
+
+        if (JSONL != null) {
+            appendLine(trace.toJson(input, error));
+        }
+    }
+
+    private static synchronized void appendLine(String line) {
+        try {
+            Files.write(Paths.get(JSONL), (line + '\n').getBytes(UTF_8), CREATE, APPEND);
+        } catch (IOException e) {
+            // A conversion does not fail for its metrics, the error is shown by export().
+            exportError = e;
+        }
+    }
+
+    /**
+     * Writes the Prometheus file, replacing the one before.
+     *
+     * @throws IOException if it, or a JSON line since the last export, could not be written
+     */
+    static synchronized void export() throws IOException {
+        EXPORTED.set(System.nanoTime());
+        IOException error = exportError;
+        exportError = null;
+        if (ENABLED && PROMETHEUS != null) {
+            Path path = Paths.get(PROMETHEUS).toAbsolutePath();
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(temporary, prometheus().getBytes(UTF_8));
+            try {
+                Files.move(temporary, path, REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, REPLACE_EXISTING);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * {@link #export()} when the last one was a while ago, for a server that never finishes.
+     */
+    static void exportIfDue() throws IOException {
+        long last = EXPORTED.get();
+        if (System.nanoTime() - last >= EXPORT_INTERVAL && EXPORTED.compareAndSet(last, System.nanoTime())) {
+            export();
+        }
+    }
+
+    /**
+     * Totals in the Prometheus text format.
+     */
+    static String prometheus() {
+        StringBuilder s = new StringBuilder(2048);
+        s.append("# HELP subtitle_stage_seconds Time spent in each conversion stage.\n")
+            .append("# TYPE subtitle_stage_seconds summary\n");
+        for (Stage stage : STAGES) {
+            String label = "{stage=\"" + stage.label + "\"}";
+            s.append("subtitle_stage_seconds_sum").append(label).append(' ')
+                .append(STAGE_NANOS[stage.ordinal()].sum() / 1e9).append('\n');
+            s.append("subtitle_stage_seconds_count").append(label).append(' ')
+                .append(STAGE_COUNTS[stage.ordinal()].sum()).append('\n');
+        }
+        s.append("# HELP subtitle_stage_allocated_bytes_total Bytes allocated by the thread of each conversion stage.\n")
+            .append("# TYPE subtitle_stage_allocated_bytes_total counter\n");
+        for (Stage stage : STAGES) {
+            s.append("subtitle_stage_allocated_bytes_total{stage=\"").append(stage.label).append("\"} ")
+                .append(STAGE_ALLOCATED[stage.ordinal()].sum()).append('\n');
+        }
+
+        Map<String, Totals> totals = new TreeMap<>(TOTALS);
+        counter(s, totals, "subtitle_files_total", "Files converted or failed.", t -> t.files);
+        counter(s, totals, "subtitle_errors_total", "Files failed.", t -> t.errors);
+        counter(s, totals, "subtitle_cues_total", "Cues read.", t -> t.cues);
+        counter(s, totals, "subtitle_read_bytes_total", "Input bytes.", t -> t.read);
+        counter(s, totals, "subtitle_written_bytes_total", "Output bytes.", t -> t.written);
+        return s.toString();
+    }
+
+    private static void counter(StringBuilder s, Map<String, Totals> totals, String name, String help,
+                                Function<Totals, LongAdder> value) {
+        s.append("# HELP ").append(name).append(' ').append(help).append('\n')
+            .append("# TYPE ").append(name).append(" counter\n");
+        for (Map.Entry<String, Totals> entry : totals.entrySet()) {
+            int tab = entry.getKey().indexOf('\t');
+            s.append(name).append("{format=\"").append(label(entry.getKey().substring(0, tab)))
+                .append("\",charset=\"").append(label(entry.getKey().substring(tab + 1))).append("\"} ")
+                .append(value.apply(entry.getValue()).sum()).append('\n');
+        }
+    }
+
+    private static String label(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void json(StringBuilder s, String value) {
+        s.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                s.append('\\').append(c);
+            } else if (c < ' ') {
+                s.append(String.format("\\u%04x", (int) c));
+            } else {
+                s.append(c);
+            }
+        }
+        s.append('"');
+    }
+
+    /**
+     * Stages and counts of one file. Stages may be timed from several threads at once.
+     */
+    static final class Trace {
+
+        private final AtomicLongArray nanos = new AtomicLongArray(STAGES.length);
+        private final AtomicLongArray allocated = new AtomicLongArray(STAGES.length);
+        private final AtomicLongArray counts = new AtomicLongArray(STAGES.length);
+        private final AtomicLong written = new AtomicLong();
+        private volatile String format = UNKNOWN;
+        private volatile String charset = UNKNOWN;
+        private volatile long read;
+        private volatile int cues;
+
+        private Trace() {
+        }
+
+        /**
+         * The file as loaded.
+         *
+         * @param read input bytes, or 0 when the cues came from a cache
+         */
+        void loaded(SubtitleFormat format, Charset charset, int cues, long read) {
+            this.format = format.getExtensions()[0];
+            this.charset = charset == null ? UNKNOWN : charset.name();
+            this.cues = cues;
+            if (read > 0L) {
+                this.read = read;
+            }
+        }
+
+        void read(long bytes) {
+            read = bytes;
+        }
+
+        void written(long bytes) {
+            written.addAndGet(bytes);
+        }
+
+        /**
+         * Adds the stages and output bytes of {@code other}, a trace of part of the same file.
+         */
+        void add(Trace other) {
+            for (int i = 0; i < STAGES.length; i++) {
+                nanos.addAndGet(i, other.nanos.get(i));
+                allocated.addAndGet(i, other.allocated.get(i));
+                counts.addAndGet(i, other.counts.get(i));
+            }
+            written.addAndGet(other.written.get());
+        }
+
+        private String toJson(File input, Throwable error) {
+            StringBuilder s = new StringBuilder(512);
+            s.append("{\"time\":");
+            json(s, Instant.now().toString());
+            s.append(",\"file\":");
+            json(s, input.getPath());
+            s.append(",\"format\":");
+            json(s, format);
+            s.append(",\"charset\":");
+            json(s, charset);
+            s.append(",\"cues\":").append(cues)
+                .append(",\"readBytes\":").append(read)
+                .append(",\"writtenBytes\":").append(written.get());
+            long total = 0L;
+            s.append(",\"stages\":{");
+            boolean first = true;
+            for (Stage stage : STAGES) {
+                int i = stage.ordinal();
+                if (counts.get(i) == 0L) {
+                    continue;
+                }
+                s.append(first ? "" : ",").append('"').append(stage.label).append("\":{\"nanos\":").append(nanos.get(i))
+                    .append(",\"allocatedBytes\":").append(allocated.get(i)).append('}');
+                total += allocated.get(i);
+                first = false;
+            }
+            s.append("},\"allocatedBytes\":").append(total);
+            if (error != null) {
+                s.append(",\"error\":");
+                json(s, String.valueOf(error.getMessage()));
+            }
+            return s.append('}').toString();
+        }
+
+    }
+
+    /**
+     * One run of a stage on one thread.
+     */
+    static final class Span {
+
+        private final Trace trace;
+        private final Stage stage;
+        private final long allocated;
+        private final long start;
+
+        private Span(Trace trace, Stage stage) {
+            this.trace = trace;
+            this.stage = stage;
+            allocated = allocated();
+            start = System.nanoTime();
+        }
+
+        private void stop() {
+            long nanos = System.nanoTime() - start;
+            long bytes = allocated();
+            int i = stage.ordinal();
+            trace.nanos.addAndGet(i, nanos);
+            trace.counts.incrementAndGet(i);
+            if (allocated >= 0L && bytes >= 0L) {
+                trace.allocated.addAndGet(i, bytes - allocated);
+            }
+        }
+
+    }
+
+    private static final class Totals {
+
+        private final LongAdder files = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder cues = new LongAdder();
+        private final LongAdder read = new LongAdder();
+        private final LongAdder written = new LongAdder();
+
+    }
+
+}
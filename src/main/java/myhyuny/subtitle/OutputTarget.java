@@ -0,0 +1,85 @@
+package myhyuny.subtitle;
+
+import java.io.File;
+import java.nio.charset.Charset;
+
+/**
+ * One output of {@link Converter#write(java.util.List)}. The charset, line delimiter and sync that
+ * are not set are taken from the converter, and the file is named after the input.
+ *
+ * @author Hyunmin Kang
+ */
+public class OutputTarget {
+
+    private final int type;
+    private Charset charset;
+    private String lineDelimiter;
+    private Long sync;
+    private String suffix;
+    private File file;
+
+    /**
+     * @param type {@link Subtitle#TYPE_SAMI}, {@link Subtitle#TYPE_SUB_RIP}, {@link Subtitle#TYPE_WEB_VTT}
+     *             or 0 for the other format
+     */
+    public OutputTarget(int type) {
+        this.type = type;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public OutputTarget setCharset(Charset charset) {
+        this.charset = charset;
+        return this;
+    }
+
+    public String getLineDelimiter() {
+        return lineDelimiter;
+    }
+
+    public OutputTarget setLineDelimiter(String lineDelimiter) {
+        this.lineDelimiter = lineDelimiter;
+        return this;
+    }
+
+    public Long getSync() {
+        return sync;
+    }
+
+    public OutputTarget setSync(long sync) {
+        this.sync = sync;
+        return this;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * Name part added before the extension, e.g. {@code cp949} for {@code movie.cp949.srt}, so that
+     * targets of the same format do not write the same file.
+     */
+    public OutputTarget setSuffix(String suffix) {
+        this.suffix = suffix;
+        return this;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Output file, instead of one named after the input.
+     */
+    public OutputTarget setFile(File file) {
+        this.file = file;
+        return this;
+    }
+
+}
@@ -0,0 +1,325 @@
+package myhyuny.subtitle;
+
+import static myhyuny.subtitle.Converter.PATTERN_SAMI_DATA;
+import static myhyuny.subtitle.Subtitle.TYPE_SAMI;
+import static myhyuny.subtitle.Subtitle.TYPE_SUB_RIP;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Parses one large input on several cores. The decoded text is cut where the reader surely starts
+ * a cue, at a SubRip index line after a blank line or at a SAMI {@code <SYNC} tag, the pieces are
+ * read at the same time with the usual readers and their cues are put together in order.
+ * <p>
+ * A SAMI cue ends at the following sync, so each piece but the last is read on to the first sync
+ * of the next. Where two pieces meet, a cue of the same text as the last of its track is joined to
+ * it as the reader does, and the cues are handed out in the order the reader would, those of one
+ * sync in the order the classes first show in the whole file rather than in their piece. Input that
+ * cannot be put together the same as in one read, e.g. with syncs out of order or a cut inside a
+ * comment, gives {@code null} to be read on one core.
+ *
+ * @author Hyunmin Kang
+ */
+final class ParallelParser {
+
+    /**
+     * Smallest piece worth a task of its own, in chars.
+     */
+    private static final int MIN_PIECE = 256 * 1024;
+
+    private ParallelParser() {
+    }
+
+    /**
+     * @return whether inputs of the format can be cut into pieces
+     */
+    static boolean supports(int type) {
+        return type == TYPE_SUB_RIP || type == TYPE_SAMI;
+    }
+
+    /**
+     * @param text   the whole input, with a backing array
+     * @param pieces number of pieces to cut the text in, at most
+     * @return the cues, or {@code null} when the text should be read on one core
+     */
+    static CueTable parse(CharBuffer text, int type, long sync, int pieces) {
+        int[] cuts = cut(text, type, Math.min(pieces, Math.max(1, text.remaining() / MIN_PIECE)));
+        if (cuts == null) {
+            return null;
+        }
+        int n = cuts.length - 1;
+        int head = type == TYPE_SAMI ? nextSync(text.array(), cuts[0], cuts[n]) : cuts[0];
+
+        // The calling thread reads the first piece while the pool reads the others.
+        List<CompletableFuture<Piece>> futures = new ArrayList<>(n - 1);
+        for (int i = 1; i < n; i++) {
+            int k = i;
+            futures.add(CompletableFuture.supplyAsync(() -> read(text, type, sync, cuts, k, head)));
+        }
+        List<Piece> read = new ArrayList<>(n);
+        read.add(read(text, type, sync, cuts, 0, head));
+        try {
+            for (CompletableFuture<Piece> future : futures) {
+                read.add(future.join());
+            }
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+
+        for (Piece piece : read) {
+            if (piece == null) {
+                return null;
+            }
+        }
+        return type == TYPE_SAMI ? joinSami(read) : join(read);
+    }
+
+    /**
+     * @return offsets of the pieces in the text and its end, or {@code null} if there is nothing to cut
+     */
+    private static int[] cut(CharBuffer text, int type, int pieces) {
+        if (pieces < 2) {
+            return null;
+        }
+        char[] chars = text.array();
+        int from = text.arrayOffset() + text.position();
+        int to = from + text.remaining();
+        int first = type == TYPE_SAMI ? nextSync(chars, from, to) : from;
+        if (first < 0) {
+            return null;
+        }
+
+        int[] cuts = new int[pieces + 1];
+        int n = 0;
+        cuts[n++] = from;
+        for (int i = 1; i < pieces; i++) {
+            int target = Math.max(from + (int) ((long) (to - from) * i / pieces), Math.max(first, cuts[n - 1]) + 1);
+            int cut = type == TYPE_SAMI ? nextSync(chars, target, to) : nextIndex(chars, target, to);
+            if (cut < 0) {
+                break;
+            }
+            if (cut > cuts[n - 1]) {
+                cuts[n++] = cut;
+            }
+        }
+        if (n < 2) {
+            return null;
+        }
+        cuts[n++] = to;
+        int[] found = new int[n];
+        System.arraycopy(cuts, 0, found, 0, n);
+        return found;
+    }
+
+    /**
+     * @return start of the first index line after a blank line from {@code from}, or -1
+     */
+    private static int nextIndex(char[] chars, int from, int to) {
+        boolean blank = false;
+        int line = from;
+        // Start at a line start, with the line before it unknown.
+        while (line < to && chars[line] != '\n' && chars[line] != '\r') {
+            line++;
+        }
+        for (int end; line < to; line = end) {
+            // Past the line break, \r\n counting as one.
+            if (chars[line] == '\r' && line + 1 < to && chars[line + 1] == '\n') {
+                line++;
+            }
+            line++;
+            end = line;
+            while (end < to && chars[end] != '\n' && chars[end] != '\r') {
+                end++;
+            }
+            CharBuffer s = CharBuffer.wrap(chars, line, end - line);
+            if (blank && SubRipReader.isIndex(s)) {
+                return line;
+            }
+            blank = isBlank(chars, line, end);
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(char[] chars, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (chars[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return start of the first {@code <SYNC} tag with a start time from {@code from}, or -1
+     */
+    private static int nextSync(char[] chars, int from, int to) {
+        for (int i = from; i + 5 < to; i++) {
+            if (chars[i] == '<' && (chars[i + 1] | 0x20) == 's' && (chars[i + 2] | 0x20) == 'y'
+                && (chars[i + 3] | 0x20) == 'n' && (chars[i + 4] | 0x20) == 'c' && SubtitleReader.isSpace(chars[i + 5])
+                && PATTERN_SAMI_DATA.matcher(CharBuffer.wrap(chars, i + 6, tagEnd(chars, i, to) - i - 6)).find()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return index just after the tag at {@code tag}, or {@code to}
+     */
+    private static int tagEnd(char[] chars, int tag, int to) {
+        for (int i = tag + 1; i < to; i++) {
+            if (chars[i] == '>') {
+                return i + 1;
+            }
+            if (chars[i] == '<') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @param head end of the SAMI head, before the first sync
+     * @return the cues of the piece, or {@code null} if the reader did not take it
+     */
+    private static Piece read(CharBuffer text, int type, long sync, int[] cuts, int k, int head) {
+        char[] chars = text.array();
+        int from = cuts[k];
+        int to = cuts[k + 1];
+        boolean last = k == cuts.length - 2;
+        if (type == TYPE_SUB_RIP) {
+            SubtitleReader reader = new SubRipReader(new CharArrayReader(chars, from, to - from), sync);
+            CueTable table = new CueTable(Math.max(16, (to - from) / 64), to - from);
+            try {
+                for (Subtitle subtitle; (subtitle = reader.read()) != null; ) {
+                    table.add(subtitle);
+                }
+            } catch (IOException | ParseException e) {
+                return null;
+            }
+            return reader.isMatched() ? new Piece(table, null, null) : null;
+        }
+
+        // Read on to the end of the first sync tag of the next piece, which ends the cues of this one.
+        int end = last ? to : tagEnd(chars, to, cuts[cuts.length - 1]);
+        SamiReader reader = new SamiReader(new CharArrayReader(chars, from, end - from), sync,
+            k == 0 ? null : CharBuffer.wrap(chars, cuts[0], head - cuts[0]));
+        try {
+            while (reader.read() != null) {
+                // The cues are taken in the order they were made.
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        if (!reader.isMatched() || reader.isCommentOpen() && !last) {
+            return null;
+        }
+        return new Piece(null, reader.getCreated(), reader.getLaneTracks());
+    }
+
+    private static CueTable join(List<Piece> pieces) {
+        int size = 0;
+        int chars = 0;
+        for (Piece piece : pieces) {
+            size += piece.table.size();
+            chars += piece.table.getTextLength();
+        }
+        CueTable table = new CueTable(size, chars);
+        for (Piece piece : pieces) {
+            table.addAll(piece.table);
+        }
+        return table;
+    }
+
+    /**
+     * Joins where the pieces meet as the reader would have, then adds the cues in the order the
+     * reader hands them out: a cue when the next of its track is made, the last ones by track.
+     */
+    private static CueTable joinSami(List<Piece> pieces) {
+        Map<String, Track> tracks = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<Track> lanes = new ArrayList<>();
+        Map<Track, Subtitle> last = new HashMap<>();
+        List<Subtitle> made = new ArrayList<>();
+        for (int k = 0; k < pieces.size(); k++) {
+            Piece piece = pieces.get(k);
+            for (Track t : piece.lanes) {
+                Track track = t == null ? null : tracks.computeIfAbsent(t.getClassName(), c -> t);
+                if (!lanes.contains(track)) {
+                    lanes.add(track);
+                }
+            }
+
+            Set<Track> seen = new HashSet<>();
+            for (List<Subtitle> sync : piece.made) {
+                for (Subtitle subtitle : sync) {
+                    Track t = subtitle.getTrack();
+                    subtitle.setTrack(t == null ? null : tracks.computeIfAbsent(t.getClassName(), c -> t));
+                }
+                if (sync.size() > 1) {
+                    // The piece opened its lanes in the order it met the classes, the reader in that of the file.
+                    sync.sort(Comparator.comparingInt(subtitle -> lanes.indexOf(subtitle.getTrack())));
+                }
+                for (Subtitle subtitle : sync) {
+                    Track track = subtitle.getTrack();
+                    Subtitle before = last.get(track);
+                    if (k > 0 && seen.add(track) && before != null) {
+                        if (subtitle.getText().equals(before.getText())) {
+                            before.setEnd(subtitle.getRawEnd());
+                            continue;
+                        }
+                        if (before.getEnd() > subtitle.getRawStart()) {
+                            // The reader would have moved the end of the cue before, to one not known here.
+                            return null;
+                        }
+                    }
+                    made.add(subtitle);
+                    last.put(track, subtitle);
+                }
+            }
+        }
+
+        CueTable table = new CueTable(made.size() + 1, made.size() * 48);
+        Map<Track, Subtitle> pending = new HashMap<>();
+        for (Subtitle subtitle : made) {
+            Subtitle before = pending.put(subtitle.getTrack(), subtitle);
+            if (before != null) {
+                table.add(before);
+            }
+        }
+        for (Track track : lanes) {
+            Subtitle subtitle = pending.get(track);
+            if (subtitle != null) {
+                table.add(subtitle);
+            }
+        }
+        return table;
+    }
+
+    private static class Piece {
+
+        private final CueTable table;
+        private final List<List<Subtitle>> made;
+        private final List<Track> lanes;
+
+        Piece(CueTable table, List<List<Subtitle>> made, List<Track> lanes) {
+            this.table = table;
+            this.made = made;
+            this.lanes = lanes;
+        }
+
+    }
+
+}
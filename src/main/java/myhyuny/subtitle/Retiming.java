@@ -0,0 +1,179 @@
+package myhyuny.subtitle;
+
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * Map of cue times, applied once to the loaded cues, see {@link Converter#setRetiming(Retiming)}.
+ * A step is piecewise linear through its anchors, and before the first and after the last anchor
+ * it keeps the offset of that anchor, or the scale of a single linear step. Steps are joined with
+ * {@link #then(Retiming)}.
+ *
+ * @author Hyunmin Kang
+ */
+public final class Retiming {
+
+    private final long[] sources;
+    private final double[] targets;
+    private final double outerScale;
+    private final Retiming next;
+    private final String spec;
+
+    private Retiming(long[] sources, double[] targets, double outerScale, Retiming next, String spec) {
+        this.sources = sources;
+        this.targets = targets;
+        this.outerScale = outerScale;
+        this.next = next;
+        this.spec = spec;
+    }
+
+    public static Retiming offset(long offset) {
+        return new Retiming(new long[]{0L}, new double[]{offset}, 1.0, null, "offset=" + SubRipTime.seconds(offset));
+    }
+
+    /**
+     * {@code time * scale + offset}, for drift that grows with time.
+     */
+    public static Retiming linear(double scale, long offset) {
+        if (!(scale > 0.0) || Double.isInfinite(scale)) {
+            throw new IllegalArgumentException("Bad scale: " + scale);
+        }
+        return new Retiming(new long[]{0L}, new double[]{offset}, scale, null,
+            "scale=" + scale + (offset != 0L ? ";offset=" + SubRipTime.seconds(offset) : ""));
+    }
+
+    /**
+     * Cues timed for a video of {@code from} frames per second, played at {@code to}, e.g. 23.976
+     * to 25 for PAL speed-up.
+     */
+    public static Retiming framerate(double from, double to) {
+        if (!(from > 0.0) || !(to > 0.0)) {
+            throw new IllegalArgumentException("Bad frame rate: " + from + '/' + to);
+        }
+        Retiming retiming = linear(from / to, 0L);
+        return new Retiming(retiming.sources, retiming.targets, retiming.outerScale, null, "fps=" + from + '/' + to);
+    }
+
+    /**
+     * Piecewise linear through {@code sources[i] -> targets[i]}, e.g. a point before and after each
+     * ad break. Both must be increasing.
+     */
+    public static Retiming anchors(long[] sources, long[] targets) {
+        if (sources.length == 0 || sources.length != targets.length) {
+            throw new IllegalArgumentException("Anchors must be pairs.");
+        }
+        StringBuilder spec = new StringBuilder("anchors=");
+        double[] to = new double[targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            if (i > 0 && (sources[i] <= sources[i - 1] || targets[i] <= targets[i - 1])) {
+                throw new IllegalArgumentException("Anchors must increase: " + sources[i] + "->" + targets[i]);
+            }
+            to[i] = targets[i];
+            spec.append(i > 0 ? "/" : "").append(SubRipTime.seconds(sources[i])).append("->").append(SubRipTime.seconds(targets[i]));
+        }
+        return new Retiming(sources.clone(), to, 1.0, null, spec.toString());
+    }
+
+    /**
+     * This map followed by {@code after}.
+     */
+    public Retiming then(Retiming after) {
+        Retiming rest = next == null ? after : next.then(after);
+        return new Retiming(sources, targets, outerScale, rest, ownSpec() + ';' + rest.spec);
+    }
+
+    private String ownSpec() {
+        return next == null ? spec : spec.substring(0, spec.length() - next.spec.length() - 1);
+    }
+
+    public long apply(long time) {
+        double t = step(time);
+        long mapped = Math.round(t);
+        return next == null ? mapped : next.apply(mapped);
+    }
+
+    private double step(long time) {
+        int last = sources.length - 1;
+        if (time <= sources[0]) {
+            return targets[0] + (time - sources[0]) * outerScale;
+        }
+        if (time >= sources[last]) {
+            return targets[last] + (time - sources[last]) * outerScale;
+        }
+        int i = Arrays.binarySearch(sources, time);
+        if (i >= 0) {
+            return targets[i];
+        }
+        int high = -i - 1;
+        int low = high - 1;
+        return targets[low] + (targets[high] - targets[low]) * (time - sources[low]) / (sources[high] - sources[low]);
+    }
+
+    /**
+     * Reads steps joined with {@code ;}: {@code offset=-2.5}, {@code scale=1.001}, {@code fps=23.976/25}
+     * and {@code anchors=00:01:00,000->00:01:02,500/00:40:00,000->00:40:05,000}. Times are seconds
+     * or {@code HH:MM:SS,mmm}.
+     */
+    public static Retiming parse(String spec) throws ParseException {
+        Retiming retiming = null;
+        int offset = 0;
+        for (String step : spec.split(";")) {
+            int eq = step.indexOf('=');
+            if (eq < 0) {
+                throw new ParseException("Bad retiming step: \"" + step + '"', offset);
+            }
+            String name = step.substring(0, eq).trim();
+            String value = step.substring(eq + 1).trim();
+            Retiming r;
+            try {
+                switch (name) {
+                    case "offset":
+                        r = offset(SubRipTime.parseTime(value));
+                        break;
+                    case "scale":
+                        r = linear(Double.parseDouble(value), 0L);
+                        break;
+                    case "fps": {
+                        int slash = value.indexOf('/');
+                        if (slash < 0) {
+                            throw new ParseException("Bad frame rates: \"" + value + '"', offset + eq + 1);
+                        }
+                        r = framerate(Double.parseDouble(value.substring(0, slash)), Double.parseDouble(value.substring(slash + 1)));
+                        break;
+                    }
+                    case "anchors": {
+                        String[] pairs = value.split("/");
+                        long[] sources = new long[pairs.length];
+                        long[] targets = new long[pairs.length];
+                        for (int i = 0; i < pairs.length; i++) {
+                            int arrow = pairs[i].indexOf("->");
+                            if (arrow < 0) {
+                                throw new ParseException("Bad anchor: \"" + pairs[i] + '"', offset + eq + 1);
+                            }
+                            sources[i] = SubRipTime.parseTime(pairs[i].substring(0, arrow).trim());
+                            targets[i] = SubRipTime.parseTime(pairs[i].substring(arrow + 2).trim());
+                        }
+                        r = anchors(sources, targets);
+                        break;
+                    }
+                    default:
+                        throw new ParseException("Unknown retiming step: \"" + name + '"', offset);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new ParseException(e.getMessage() + " (" + step + ')', offset);
+            }
+            retiming = retiming == null ? r : retiming.then(r);
+            offset += step.length() + 1;
+        }
+        if (retiming == null) {
+            throw new ParseException("Empty retiming.", 0);
+        }
+        return retiming;
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+
+}
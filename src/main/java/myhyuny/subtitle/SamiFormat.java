@@ -0,0 +1,74 @@
+package myhyuny.subtitle;
+
+import static myhyuny.subtitle.Subtitle.TYPE_SAMI;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * SAMI. Files read as Korean are written with a Korean paragraph class.
+ *
+ * @author Hyunmin Kang
+ */
+class SamiFormat implements SubtitleFormat {
+
+    private static final Charset CHARSET_EUC_KR = Charset.forName("EUC-KR");
+    private static final Charset CHARSET_CP949 = Charset.forName("x-windows-949");
+
+    @Override
+    public String getName() {
+        return "SAMI";
+    }
+
+    @Override
+    public int getType() {
+        return TYPE_SAMI;
+    }
+
+    @Override
+    public String[] getExtensions() {
+        return new String[]{"smi", "sami"};
+    }
+
+    /**
+     * {@code <SAMI>} is sure, a {@code <SYNC} alone likely.
+     */
+    @Override
+    public int probe(CharSequence prefix) {
+        if (indexOfIgnoreCase(prefix, "<sami") >= 0) {
+            return 100;
+        }
+        return indexOfIgnoreCase(prefix, "<sync") >= 0 ? 80 : 0;
+    }
+
+    @Override
+    public SubtitleReader newReader(Reader reader, long sync) {
+        return new SamiReader(reader, sync);
+    }
+
+    @Override
+    public SubtitleWriter newWriter(Writer writer, String lineDelimiter, Charset inputCharset) throws IOException {
+        return new SamiWriter(writer, lineDelimiter,
+            CHARSET_CP949.equals(inputCharset) || CHARSET_EUC_KR.equals(inputCharset) ? Track.KOREAN : null
+        );
+    }
+
+    /**
+     * @param lower the string to find, in lower case
+     */
+    static int indexOfIgnoreCase(CharSequence s, String lower) {
+        for (int i = 0, last = s.length() - lower.length(); i <= last; i++) {
+            int j = 0;
+            while (j < lower.length() && Character.toLowerCase(s.charAt(i + j)) == lower.charAt(j)) {
+                j++;
+            }
+            if (j == lower.length()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
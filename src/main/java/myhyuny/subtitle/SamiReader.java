@@ -0,0 +1,339 @@
+package myhyuny.subtitle;
+
+import static java.lang.Long.parseLong;
+import static java.util.regex.Pattern.CASE_INSENSITIVE;
+import static myhyuny.subtitle.Converter.PATTERN_SAMI_DATA;
+import static myhyuny.subtitle.Subtitle.TYPE_SAMI;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SAMI reader. The stream is cut at every {@code <SYNC} tag with comments skipped on the way,
+ * and a cue is handed out once the following sync has fixed its end.
+ * <p>
+ * The class rules of the {@code <STYLE>} block are read as language tracks. A sync whose paragraphs
+ * are of several classes gives a cue for each class, and the cues of each track are joined and
+ * ended on their own, so a file with KRCC and ENCC paragraphs in the same syncs reads as two
+ * tracks. Cues are in order of start time within a track.
+ *
+ * @author Hyunmin Kang
+ */
+class SamiReader extends SubtitleReader {
+
+    private static final Pattern PATTERN_STYLE_RULE = Pattern.compile("\\.([\\w-]+)\\s*\\{([^}]*)}");
+    private static final Pattern PATTERN_STYLE_NAME = Pattern.compile("\\bname\\s*:\\s*([^;]+)", CASE_INSENSITIVE);
+    private static final Pattern PATTERN_STYLE_LANG = Pattern.compile("\\blang\\s*:\\s*([^;]+)", CASE_INSENSITIVE);
+
+    private final StringBuilder chunk = new StringBuilder();
+    private boolean eof = false;
+
+    private final StringBuilder style = new StringBuilder();
+    private boolean head = true;
+    private final Map<String, Track> tracks = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final List<Lane> lanes = new ArrayList<>(2);
+    private final ArrayDeque<Subtitle> completed = new ArrayDeque<>();
+    private long end = 0L;
+    private List<List<Subtitle>> created;
+    private List<Subtitle> made;
+    private boolean open = false;
+
+    SamiReader(Reader reader, long sync) {
+        super(reader, sync);
+        lanes.add(new Lane(null));
+    }
+
+    /**
+     * Reader of a piece of a file, see {@link ParallelParser}. The cues are also kept in the order
+     * they are made, by sync, as their ends may still change when they are handed out.
+     *
+     * @param head start of the file up to the first sync, for the style rules, or {@code null} when
+     *             the piece starts with it
+     */
+    SamiReader(Reader reader, long sync, CharSequence head) {
+        this(reader, sync);
+        if (head != null) {
+            readStyle(head);
+            this.head = false;
+        }
+        created = new ArrayList<>();
+        made = new ArrayList<>(2);
+    }
+
+    /**
+     * @return cues in the order they were made, one list for each sync that made any, for a reader
+     * of a piece. Those of one sync are in the order of the lanes of the piece.
+     */
+    List<List<Subtitle>> getCreated() {
+        return created;
+    }
+
+    /**
+     * @return tracks of the lanes in the order they were opened, {@code null} for paragraphs of no class
+     */
+    List<Track> getLaneTracks() {
+        List<Track> tracks = new ArrayList<>(lanes.size());
+        for (Lane lane : lanes) {
+            tracks.add(lane.track);
+        }
+        return tracks;
+    }
+
+    /**
+     * @return {@code true} if the stream ended inside a comment
+     */
+    boolean isCommentOpen() {
+        return open;
+    }
+
+    @Override
+    protected Subtitle read() throws IOException {
+        while (completed.isEmpty()) {
+            String sync = nextSync();
+            if (sync == null) {
+                for (Lane lane : lanes) {
+                    if (lane.pending != null) {
+                        completed.add(lane.pending);
+                        lane.pending = null;
+                    }
+                }
+                break;
+            }
+            if (head) {
+                readStyle(style.append(sync));
+                style.setLength(0);
+                head = false;
+            }
+
+            Matcher matcher;
+            if (!(matcher = PATTERN_SAMI_DATA.matcher(sync)).find()) {
+                continue;
+            }
+
+            long start = end;
+            end = parseLong(matcher.group(1));
+            for (Lane lane : lanes) {
+                lane.close(start, end);
+                lane.text = "";
+            }
+            if (created != null && !made.isEmpty()) {
+                created.add(made);
+                made = new ArrayList<>(2);
+            }
+            split(matcher.group(2).trim());
+        }
+
+        Subtitle complete = completed.poll();
+        if (complete != null) {
+            count++;
+        }
+        return complete;
+    }
+
+    /**
+     * Hands the text of a sync to the lanes of its paragraph classes. Text of one class, or none,
+     * is kept whole, paragraph tag included.
+     */
+    private void split(String text) {
+        String first = null;
+        boolean several = false;
+        for (int p = paragraph(text, 0); p >= 0; p = paragraph(text, p + 2)) {
+            String className = className(text, p);
+            if (first == null) {
+                first = className;
+            } else if (!first.equalsIgnoreCase(className)) {
+                several = true;
+                break;
+            }
+        }
+        if (!several) {
+            lane(first).text = text;
+            return;
+        }
+
+        int from = 0;
+        for (int p = paragraph(text, 0), next; p >= 0; p = next) {
+            next = paragraph(text, p + 2);
+            Lane lane = lane(className(text, p));
+            String segment = text.substring(from, next < 0 ? text.length() : next).trim();
+            lane.text = lane.text.isEmpty() ? segment : lane.text + '\n' + segment;
+            from = next;
+        }
+    }
+
+    private Lane lane(String className) {
+        Track track = className == null || className.isEmpty() ? null : track(className);
+        for (Lane lane : lanes) {
+            if (lane.track == track) {
+                return lane;
+            }
+        }
+        Lane lane = new Lane(track);
+        lanes.add(lane);
+        return lane;
+    }
+
+    private Track track(String className) {
+        return tracks.computeIfAbsent(className, c -> new Track(c, null, null));
+    }
+
+    /**
+     * Reads the class rules of the head, {@code .KRCC { Name: Korean; lang: ko-KR; }}.
+     */
+    private void readStyle(CharSequence head) {
+        for (Matcher rule = PATTERN_STYLE_RULE.matcher(head); rule.find(); ) {
+            Matcher name = PATTERN_STYLE_NAME.matcher(rule.group(2));
+            Matcher lang = PATTERN_STYLE_LANG.matcher(rule.group(2));
+            tracks.put(rule.group(1), new Track(rule.group(1),
+                name.find() ? name.group(1).trim() : null, lang.find() ? lang.group(1).trim() : null
+            ));
+        }
+    }
+
+    /**
+     * @return index of the next {@code <P} tag from {@code from}, or -1
+     */
+    private static int paragraph(String text, int from) {
+        for (int i = text.indexOf('<', from); i >= 0 && i + 2 < text.length(); i = text.indexOf('<', i + 1)) {
+            char c = text.charAt(i + 2);
+            if ((text.charAt(i + 1) | 0x20) == 'p' && (c == '>' || isSpace(c))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return value of the {@code Class} attribute of the tag at {@code tag}, or {@code null}
+     */
+    private static String className(String text, int tag) {
+        int close = text.indexOf('>', tag);
+        if (close < 0) {
+            close = text.length();
+        }
+        int i = SamiFormat.indexOfIgnoreCase(text.substring(tag, close), "class");
+        if (i < 0) {
+            return null;
+        }
+        i += tag + 5;
+        while (i < close && (text.charAt(i) == '=' || isSpace(text.charAt(i)))) {
+            i++;
+        }
+        if (i < close && (text.charAt(i) == '"' || text.charAt(i) == '\'')) {
+            i++;
+        }
+        int begin = i;
+        while (i < close && text.charAt(i) != '"' && text.charAt(i) != '\'' && !isSpace(text.charAt(i))) {
+            i++;
+        }
+        return text.substring(begin, i);
+    }
+
+    private String nextSync() throws IOException {
+        if (eof) {
+            return null;
+        }
+
+        chunk.setLength(0);
+        for (int c; (c = reader.read()) != -1; ) {
+            if (c == '<') {
+                reader.mark(4);
+                if (skipComment()) {
+                    continue;
+                }
+                reader.reset();
+                reader.mark(5);
+                if (isSyncTag()) {
+                    matched = true;
+                    return chunk.toString();
+                }
+                reader.reset();
+            } else if (c == '\r') {
+                reader.mark(1);
+                if (reader.read() == '\n') {
+                    c = '\n';
+                } else {
+                    reader.reset();
+                }
+            }
+            chunk.append((char) c);
+        }
+
+        eof = true;
+        return chunk.toString();
+    }
+
+    /**
+     * Skips a comment, keeping those of the head, where the style rules usually are.
+     */
+    private boolean skipComment() throws IOException {
+        if (reader.read() != '!' || reader.read() != '-' || reader.read() != '-') {
+            return false;
+        }
+        for (int c, dash = 0; (c = reader.read()) != -1; ) {
+            if (c == '>' && dash >= 2) {
+                return true;
+            }
+            dash = c == '-' ? dash + 1 : 0;
+            if (head && !matched) {
+                style.append((char) c);
+            }
+        }
+        open = true;
+        return true;
+    }
+
+    private boolean isSyncTag() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            if (Character.toLowerCase(reader.read()) != "sync".charAt(i)) {
+                return false;
+            }
+        }
+        return isSpace(reader.read());
+    }
+
+    /**
+     * Cues of one track. The text of the last sync becomes a cue, or lengthens the last cue, when
+     * the next sync ends it.
+     */
+    private class Lane {
+
+        private final Track track;
+        private Subtitle subtitle = new Subtitle(TYPE_SAMI);
+        private Subtitle pending;
+        private String text = "";
+
+        Lane(Track track) {
+            this.track = track;
+        }
+
+        void close(long start, long end) {
+            if (text.length() < 1) {
+                return;
+            }
+            if (text.equals(subtitle.getText())) {
+                subtitle.setEnd(end);
+                return;
+            }
+            if (subtitle.getEnd() > start) {
+                subtitle.setEnd(end);
+            }
+            if (pending != null) {
+                completed.add(pending);
+            }
+            subtitle = pending = new Subtitle(TYPE_SAMI, start, end, text, sync).setTrack(track);
+            if (created != null) {
+                made.add(subtitle);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,163 @@
+package myhyuny.subtitle;
+
+/**
+ * Converts SAMI markup to plain text in a single pass. Tags are dropped, {@code <BR>} becomes a new line,
+ * character references are decoded, spaces are collapsed and every line is trimmed.
+ *
+ * @author Hyunmin Kang
+ */
+final class SamiText {
+
+    private static final int STATE_NEW_LINE = 0x1;
+    private static final int STATE_SPACE = 0x1 << 1;
+
+    private static final int ENTITY_MAX_LENGTH = 10;
+
+    private SamiText() {
+    }
+
+    /**
+     * Appends the plain text of {@code sami} to {@code out}, so the same buffer can be reused for every cue.
+     */
+    static StringBuilder plain(CharSequence sami, StringBuilder out) {
+        int begin = out.length();
+        int state = STATE_NEW_LINE;
+        int unclosed = Integer.MAX_VALUE;
+
+        for (int i = 0, length = sami.length(); i < length; i++) {
+            char c = sami.charAt(i);
+
+            if (c == '<' && i < unclosed) {
+                int p = i + 1;
+                if (p < length && sami.charAt(p) == '/') {
+                    p++;
+                }
+                int name = p;
+                while (p < length && isWord(sami.charAt(p))) {
+                    p++;
+                }
+                if (p > name) {
+                    int close = indexOf(sami, '>', p);
+                    if (close >= 0) {
+                        if (name == i + 1 && p - name == 2 &&
+                            (sami.charAt(name) | 0x20) == 'b' && (sami.charAt(name + 1) | 0x20) == 'r'
+                        ) {
+                            state = append(out, begin, state, '\n');
+                        }
+                        i = close;
+                        continue;
+                    }
+                    unclosed = i;
+                }
+
+            } else if (c == '&') {
+                int end = i + 1;
+                int limit = Math.min(length, end + ENTITY_MAX_LENGTH);
+                while (end < limit && sami.charAt(end) != ';') {
+                    end++;
+                }
+                int code = end < limit ? decode(sami, i + 1, end) : -1;
+                if (code >= 0) {
+                    if (code == '\u00A0') {
+                        state = append(out, begin, state, ' ');
+                    } else if (Character.isBmpCodePoint(code)) {
+                        state = append(out, begin, state, (char) code);
+                    } else {
+                        state = append(out, begin, state, Character.highSurrogate(code));
+                        state = append(out, begin, state, Character.lowSurrogate(code));
+                    }
+                    i = end;
+                    continue;
+                }
+            }
+
+            state = append(out, begin, state, c);
+        }
+
+        int end = out.length();
+        while (end > begin && out.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        out.setLength(end);
+        return out;
+    }
+
+    private static int append(StringBuilder out, int begin, int state, char c) {
+        if (c == '\n') {
+            int length = out.length();
+            while (length > begin && SubtitleReader.isSpace(out.charAt(length - 1))) {
+                length--;
+            }
+            out.setLength(length);
+            if (length > begin) {
+                out.append('\n');
+            }
+            return STATE_NEW_LINE;
+        }
+
+        if (out.length() == begin) {
+            if (c <= ' ' || isSpaceCharacter(c)) {
+                return state;
+            }
+        } else if ((state & STATE_NEW_LINE) != 0 && (SubtitleReader.isSpace(c) || isSpaceCharacter(c))) {
+            return state;
+        }
+
+        if (isSpaceCharacter(c)) {
+            if ((state & STATE_SPACE) == 0) {
+                out.append(' ');
+            }
+            return STATE_SPACE;
+        }
+
+        out.append(c);
+        return 0;
+    }
+
+    /**
+     * @return character of the reference {@code &s[from, to);}, or {@code -1} when it is not one
+     */
+    static int decode(CharSequence s, int from, int to) {
+        if (to - from < 2 || s.charAt(from) != '#') {
+            return HtmlEntities.lookup(s, from, to);
+        }
+
+        int radix = 10;
+        int p = from + 1;
+        if ((s.charAt(p) | 0x20) == 'x') {
+            radix = 16;
+            p++;
+        }
+        if (p == to) {
+            return -1;
+        }
+
+        int code = 0;
+        for (; p < to; p++) {
+            int digit = Character.digit(s.charAt(p), radix);
+            if (digit < 0) {
+                return -1;
+            }
+            code = code * radix + digit;
+        }
+        return code > 0 && Character.isValidCodePoint(code) ? code : -1;
+    }
+
+    private static int indexOf(CharSequence s, char c, int from) {
+        for (int i = from, length = s.length(); i < length; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWord(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static boolean isSpaceCharacter(char c) {
+        return c == '\t' || c == ' ' || c == '　';
+    }
+
+}
@@ -0,0 +1,129 @@
+package myhyuny.subtitle;
+
+import static myhyuny.subtitle.Subtitle.TYPE_SAMI;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SAMI writer for several language tracks. A sync replaces every paragraph shown, so each sync is
+ * written with the current cue of every track, a paragraph of its class each, and a track whose cue
+ * ends gets a sync of the others still showing. Cues must come in order of start time; those of
+ * the same track and start replace each other.
+ * <p>
+ * Only the current cue of each track is held, so tracks from several inputs can be merged while
+ * they are read, see {@link Converter#writeSami(java.io.File, List)}.
+ *
+ * @author Hyunmin Kang
+ */
+class SamiTracksWriter extends SubtitleWriter {
+
+    private final List<Track> tracks;
+    private final String[] paragraphs;
+    private final CueTable[] tables;
+    private final int[] indices;
+    private final long[] ends;
+    private long pending = -1L;
+
+    /**
+     * @param tracks classes of the paragraphs, cues without a track are written without a class
+     */
+    SamiTracksWriter(Writer writer, String lineDelimiter, List<Track> tracks) throws IOException {
+        super(writer, lineDelimiter);
+        this.tracks = tracks;
+
+        int slots = tracks.size() + 1;
+        paragraphs = new String[slots];
+        for (int k = 0; k < tracks.size(); k++) {
+            paragraphs[k] = "<P Class=" + tracks.get(k).getClassName() + '>';
+        }
+        paragraphs[tracks.size()] = "<P>";
+        tables = new CueTable[slots];
+        indices = new int[slots];
+        ends = new long[slots];
+
+        SamiWriter.head(this, tracks);
+    }
+
+    @Override
+    protected void write(CueTable cues, int i) throws IOException {
+        write(cues, i, cues.getTrack(i), getStart(cues, i), getEnd(cues, i));
+    }
+
+    /**
+     * @param track track to write the cue to, whatever the track of the cue in its table
+     * @param start start time with the sync
+     * @param end   end time with the sync
+     */
+    void write(CueTable cues, int i, Track track, long start, long end) throws IOException {
+        if (pending >= 0L && start > pending) {
+            sync(pending);
+            pending = -1L;
+        }
+        expire(start);
+
+        int k = track == null ? tracks.size() : tracks.indexOf(track);
+        if (k < 0) {
+            throw new SubtitleException("Unknown track. (" + track + ')');
+        }
+        tables[k] = cues;
+        indices[k] = i;
+        ends[k] = end;
+        pending = start;
+    }
+
+    /**
+     * Writes a sync at each cue end before {@code time}.
+     */
+    private void expire(long time) throws IOException {
+        for (; ; ) {
+            long end = Long.MAX_VALUE;
+            for (int k = 0; k < tables.length; k++) {
+                if (tables[k] != null && ends[k] < end) {
+                    end = ends[k];
+                }
+            }
+            if (end >= time) {
+                return;
+            }
+            sync(end);
+        }
+    }
+
+    /**
+     * Writes a sync with the cues still showing at {@code time}.
+     */
+    private void sync(long time) throws IOException {
+        append("<SYNC Start=").append(time).append(">\n");
+        for (int k = 0; k < tables.length; k++) {
+            if (tables[k] == null) {
+                continue;
+            }
+            if (ends[k] <= time) {
+                tables[k] = null;
+                continue;
+            }
+            CharSequence t = tables[k].getText(indices[k], text);
+            int type = tables[k].getType(indices[k]);
+            if (type == TYPE_SAMI) {
+                t = t.subSequence(SamiWriter.paragraphEnd(t), t.length());
+            }
+            append(paragraphs[k]);
+            Subtitle.appendSami(this, type, t).newLine();
+        }
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        if (pending >= 0L) {
+            sync(pending);
+            pending = -1L;
+        }
+        expire(Long.MAX_VALUE);
+        Arrays.fill(tables, null);
+        append("</BODY>\n</SAMI>");
+    }
+
+}
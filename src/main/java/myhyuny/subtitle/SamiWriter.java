@@ -0,0 +1,82 @@
+package myhyuny.subtitle;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SAMI writer. A closing {@code <SYNC>} is written only when the next cue does not start
+ * where the previous one ended.
+ *
+ * @author Hyunmin Kang
+ */
+class SamiWriter extends SubtitleWriter {
+
+    private final String paragraph;
+    private long end = 0L;
+
+    /**
+     * @param track paragraph class, or {@code null} for none
+     */
+    SamiWriter(Writer writer, String lineDelimiter, Track track) throws IOException {
+        super(writer, lineDelimiter);
+
+        head(this, track == null ? Collections.emptyList() : Collections.singletonList(track));
+        paragraph = track == null ? "<P>" : "<P Class=" + track.getClassName() + '>';
+    }
+
+    static void head(SubtitleWriter writer, List<Track> tracks) throws IOException {
+        writer.append("<SAMI>\n<HEAD>\n<TITLE></TITLE>\n<STYLE><!--\np { font-family: sans-serif; text-align: center; }\n");
+        for (Track track : tracks) {
+            writer.append(track.getStyle()).newLine();
+        }
+        writer.append("--></STYLE>\n</HEAD>\n<BODY>\n");
+    }
+
+    @Override
+    protected void write(CueTable cues, int i) throws IOException {
+        long e = getEnd(cues, i);
+        if (e < 0L) {
+            return;
+        }
+        long start = getStart(cues, i);
+        if (start != end && end != 0) {
+            sync(end);
+        }
+        sync(start);
+        CharSequence t = cues.getText(i, text);
+        if (cues.getType(i) != Subtitle.TYPE_SAMI || paragraphEnd(t) == 0) {
+            // SAMI text keeps its own paragraph and class.
+            append(paragraph);
+        }
+        Subtitle.appendSami(this, cues.getType(i), t).newLine();
+        end = e;
+    }
+
+    private SubtitleWriter sync(long start) throws IOException {
+        return append("<SYNC Start=").append(start).append(">\n");
+    }
+
+    /**
+     * @return index after a leading {@code <P>} tag, which the reader keeps in the text, or 0
+     */
+    static int paragraphEnd(CharSequence text) {
+        if (text.length() < 3 || text.charAt(0) != '<' || (text.charAt(1) | 0x20) != 'p'
+            || text.charAt(2) != '>' && !Character.isWhitespace(text.charAt(2))) {
+            return 0;
+        }
+        for (int i = 2; i < text.length(); i++) {
+            if (text.charAt(i) == '>') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        sync(end).append("</BODY>\n</SAMI>");
+    }
+
+}
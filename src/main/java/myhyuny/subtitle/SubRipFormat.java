@@ -0,0 +1,60 @@
+package myhyuny.subtitle;
+
+import static myhyuny.subtitle.Subtitle.TYPE_SUB_RIP;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * SubRip.
+ *
+ * @author Hyunmin Kang
+ */
+class SubRipFormat implements SubtitleFormat {
+
+    @Override
+    public String getName() {
+        return "SubRip";
+    }
+
+    @Override
+    public int getType() {
+        return TYPE_SUB_RIP;
+    }
+
+    @Override
+    public String[] getExtensions() {
+        return new String[]{"srt"};
+    }
+
+    /**
+     * A {@code HH:MM:SS,mmm --> HH:MM:SS,mmm} timing line is likely.
+     */
+    @Override
+    public int probe(CharSequence prefix) {
+        String s = prefix.toString();
+        for (int arrow = s.indexOf("-->"); arrow >= 0; arrow = s.indexOf("-->", arrow + 3)) {
+            int p = s.lastIndexOf('\n', arrow) + 1;
+            while (p < arrow && SubtitleReader.isSpace(s.charAt(p))) {
+                p++;
+            }
+            int end = SubRipTime.scan(s, p);
+            if (end > 0 && end <= arrow && s.substring(end, arrow).trim().isEmpty()) {
+                return 90;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public SubtitleReader newReader(Reader reader, long sync) {
+        return new SubRipReader(reader, sync);
+    }
+
+    @Override
+    public SubtitleWriter newWriter(Writer writer, String lineDelimiter, Charset inputCharset) {
+        return new SubRipWriter(writer, lineDelimiter);
+    }
+
+}
@@ -0,0 +1,228 @@
+package myhyuny.subtitle;
+
+import static myhyuny.subtitle.SubRipTime.parse;
+import static myhyuny.subtitle.SubRipTime.scan;
+import static myhyuny.subtitle.Subtitle.TYPE_SUB_RIP;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * SubRip reader. A character level state machine that parses the timing line, collapses spaces
+ * and trims every line of a cue in a single pass, with the same results as {@link SubRipRegexReader}.
+ *
+ * @author Hyunmin Kang
+ */
+class SubRipReader extends SubtitleReader {
+
+    private static final int STATE_TIME = 0;
+    private static final int STATE_TEXT = 1;
+
+    private final StringBuilder line = new StringBuilder();
+    private final StringBuilder text = new StringBuilder();
+    private int state = STATE_TIME;
+    private boolean blank = false;
+    private boolean eof = false;
+
+    private long start;
+    private long end;
+    private boolean content;
+    private boolean newLine;
+    private boolean space;
+
+    SubRipReader(Reader reader, long sync) {
+        super(reader, sync);
+    }
+
+    @Override
+    protected Subtitle read() throws IOException {
+        while (readLine()) {
+            if (blank && isIndex(line)) {
+                matched = true;
+                blank = false;
+                Subtitle subtitle = complete();
+                if (subtitle != null) {
+                    return subtitle;
+                }
+                continue;
+            }
+            blank = isBlank(line);
+
+            if (state == STATE_TEXT) {
+                append('\n');
+                append(line, 0);
+            } else {
+                int i = parseTime(line);
+                if (i >= 0) {
+                    state = STATE_TEXT;
+                    text.setLength(0);
+                    content = false;
+                    newLine = true;
+                    space = false;
+                    append(line, i);
+                }
+            }
+        }
+        return complete();
+    }
+
+    private Subtitle complete() {
+        if (state != STATE_TEXT) {
+            return null;
+        }
+        state = STATE_TIME;
+        if (!content) {
+            return null;
+        }
+        matched = true;
+
+        int from = 0, to = text.length();
+        while (from < to && text.charAt(from) <= ' ') {
+            from++;
+        }
+        while (to > from && text.charAt(to - 1) <= ' ') {
+            to--;
+        }
+
+        count++;
+        return new Subtitle(TYPE_SUB_RIP, start, end, text.substring(from, to), sync);
+    }
+
+    private boolean readLine() throws IOException {
+        if (eof) {
+            return false;
+        }
+        line.setLength(0);
+        for (int c; (c = reader.read()) != -1; ) {
+            if (c == '\n') {
+                return true;
+            }
+            if (c == '\r') {
+                reader.mark(1);
+                if (reader.read() != '\n') {
+                    reader.reset();
+                }
+                return true;
+            }
+            line.append((char) c);
+        }
+        eof = true;
+        return line.length() > 0;
+    }
+
+    private void append(CharSequence s, int from) {
+        for (int i = from, length = s.length(); i < length; i++) {
+            append(s.charAt(i));
+        }
+    }
+
+    /**
+     * Same as replacing {@code [\t 　]+} with a space, then {@code \n\s+} and {@code \s+\n} with a new line.
+     */
+    private void append(char c) {
+        if (c == '\n') {
+            int length = text.length();
+            while (length > 0 && isSpace(text.charAt(length - 1))) {
+                length--;
+            }
+            text.setLength(length);
+            text.append('\n');
+            newLine = true;
+            space = false;
+            return;
+        }
+
+        if (!isSpace(c)) {
+            content = true;
+        }
+
+        if (newLine && (isSpace(c) || isSpaceCharacter(c))) {
+            return;
+        }
+        newLine = false;
+
+        if (isSpaceCharacter(c)) {
+            if (!space) {
+                text.append(' ');
+                space = true;
+            }
+            return;
+        }
+        space = false;
+        text.append(c);
+    }
+
+    /**
+     * Parses {@code HH:MM:SS,mmm --> HH:MM:SS,mmm} found anywhere in the line.
+     *
+     * @return index just after the timing, or {@code -1} when there is none
+     */
+    private int parseTime(CharSequence s) {
+        for (int i = 0, length = s.length(); i < length; i++) {
+            if (!isDigit(s.charAt(i)) || (i > 0 && isDigit(s.charAt(i - 1)))) {
+                continue;
+            }
+
+            int t = scan(s, i);
+            if (t < 0) {
+                continue;
+            }
+
+            int q = t;
+            while (q < length && isSpace(s.charAt(q))) {
+                q++;
+            }
+            if (q == t || q + 3 > length || s.charAt(q) != '-' || s.charAt(q + 1) != '-' || s.charAt(q + 2) != '>') {
+                continue;
+            }
+            int p = q + 3;
+            while (p < length && isSpace(s.charAt(p))) {
+                p++;
+            }
+            if (p == q + 3) {
+                continue;
+            }
+
+            if ((q = scan(s, p)) < 0 || (q < length && !isSpace(s.charAt(q)))) {
+                continue;
+            }
+
+            start = parse(s, i, t);
+            end = parse(s, p, q);
+            return q;
+        }
+        return -1;
+    }
+
+    static boolean isIndex(CharSequence line) {
+        int i = 0, length = line.length();
+        while (i < length && isDigit(line.charAt(i))) {
+            i++;
+        }
+        if (i == 0) {
+            return false;
+        }
+        while (i < length && isSpace(line.charAt(i))) {
+            i++;
+        }
+        return i == length;
+    }
+
+    private static boolean isBlank(CharSequence line) {
+        for (int i = 0, length = line.length(); i < length; i++) {
+            if (line.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isSpaceCharacter(char c) {
+        return c == '\t' || c == ' ' || c == '　';
+    }
+
+}
@@ -0,0 +1,99 @@
+package myhyuny.subtitle;
+
+import static myhyuny.subtitle.Converter.LINE_DELIMITER_UNIX;
+import static myhyuny.subtitle.Converter.PATTERN_LEFT_TRIM;
+import static myhyuny.subtitle.Converter.PATTERN_RIGHT_TRIM;
+import static myhyuny.subtitle.Converter.PATTERN_SPACE;
+import static myhyuny.subtitle.Converter.PATTERN_SUB_RIP_DATA;
+import static myhyuny.subtitle.SubRipReader.isIndex;
+import static myhyuny.subtitle.Subtitle.TYPE_SUB_RIP;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+
+/**
+ * Regular expression based SubRip reader. A cue ends where a blank line is followed by an index line,
+ * so only one cue is held in memory at a time. Kept as the reference for {@link SubRipReader}.
+ *
+ * @author Hyunmin Kang
+ */
+class SubRipRegexReader extends SubtitleReader {
+
+    private final SimpleDateFormat formatSubRip = new SimpleDateFormat("HH:mm:ss,SSS");
+
+    {
+        formatSubRip.setTimeZone(TimeZone.getTimeZone("GMT"));
+    }
+
+    private final StringBuilder chunk = new StringBuilder();
+    private boolean blank = false;
+    private boolean eof = false;
+
+    SubRipRegexReader(Reader reader, long sync) {
+        super(reader, sync);
+    }
+
+    @Override
+    protected Subtitle read() throws IOException, ParseException {
+        while (!eof) {
+            String line = reader.readLine();
+            if (line == null) {
+                eof = true;
+                return parse();
+            }
+
+            if (blank && isIndex(line)) {
+                matched = true;
+                blank = false;
+                Subtitle subtitle = parse();
+                if (subtitle != null) {
+                    return subtitle;
+                }
+                continue;
+            }
+
+            chunk.append(line).append('\n');
+            blank = line.trim().isEmpty();
+        }
+        return null;
+    }
+
+    private Subtitle parse() throws ParseException {
+        int length = chunk.length();
+        while (length > 0 && isSpace(chunk.charAt(length - 1))) {
+            length--;
+        }
+        chunk.setLength(length);
+
+        Matcher matcher = PATTERN_SUB_RIP_DATA.matcher(chunk);
+        if (!matcher.find()) {
+            chunk.setLength(0);
+            return null;
+        }
+        matched = true;
+
+        String text = matcher.group(3);
+        Matcher m;
+        if ((m = PATTERN_SPACE.matcher(text)).find()) {
+            text = m.replaceAll(" ");
+        }
+        if ((m = PATTERN_LEFT_TRIM.matcher(text)).find()) {
+            text = m.replaceAll(LINE_DELIMITER_UNIX);
+        }
+        if ((m = PATTERN_RIGHT_TRIM.matcher(text)).find()) {
+            text = m.replaceAll(LINE_DELIMITER_UNIX);
+        }
+
+        Subtitle subtitle = new Subtitle(
+            TYPE_SUB_RIP, formatSubRip.parse(matcher.group(1)), formatSubRip.parse(matcher.group(2)), text.trim(), sync
+        );
+        chunk.setLength(0);
+        count++;
+        return subtitle;
+    }
+
+}
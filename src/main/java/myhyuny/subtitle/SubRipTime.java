@@ -0,0 +1,145 @@
+package myhyuny.subtitle;
+
+import java.math.BigDecimal;
+import java.nio.CharBuffer;
+import java.text.ParseException;
+
+/**
+ * SubRip {@code HH:MM:SS,mmm} time codec working on milliseconds. Hours may have more than two digits
+ * and milliseconds may have one to three digits, which are read as a number of milliseconds.
+ *
+ * @author Hyunmin Kang
+ */
+final class SubRipTime {
+
+    private SubRipTime() {
+    }
+
+    /**
+     * @return index just after the time starting at {@code from}, or {@code -1} when there is none
+     */
+    static int scan(CharSequence s, int from) {
+        int length = s.length();
+        int p = from;
+        while (p < length && isDigit(s.charAt(p))) {
+            p++;
+        }
+        if (p - from < 2 || p + 6 >= length ||
+            s.charAt(p) != ':' || !isDigit(s.charAt(p + 1)) || !isDigit(s.charAt(p + 2)) ||
+            s.charAt(p + 3) != ':' || !isDigit(s.charAt(p + 4)) || !isDigit(s.charAt(p + 5)) ||
+            s.charAt(p + 6) != ','
+        ) {
+            return -1;
+        }
+
+        p += 7;
+        int m = p;
+        while (p < length && p - m < 3 && isDigit(s.charAt(p))) {
+            p++;
+        }
+        if (p == m || (p < length && isDigit(s.charAt(p)))) {
+            return -1;
+        }
+        return p;
+    }
+
+    /**
+     * @param to index returned by {@link #scan(CharSequence, int)}
+     */
+    static long parse(CharSequence s, int from, int to) {
+        long hours = 0L;
+        int p = from;
+        char c;
+        while ((c = s.charAt(p)) != ':') {
+            hours = hours * 10 + c - '0';
+            p++;
+        }
+        long minutes = (s.charAt(p + 1) - '0') * 10 + s.charAt(p + 2) - '0';
+        long seconds = (s.charAt(p + 4) - '0') * 10 + s.charAt(p + 5) - '0';
+
+        long millis = 0L;
+        for (p += 7; p < to; p++) {
+            millis = millis * 10 + s.charAt(p) - '0';
+        }
+
+        return ((hours * 60 + minutes) * 60 + seconds) * 1000 + millis;
+    }
+
+    static long parse(CharSequence s) throws ParseException {
+        int to = scan(s, 0);
+        if (to != s.length()) {
+            throw new ParseException("Unparseable time: \"" + s + '"', 0);
+        }
+        return parse(s, 0, to);
+    }
+
+    /**
+     * @param time {@code HH:MM:SS,mmm} or {@code HH:MM:SS.mmm}, or seconds
+     * @return milliseconds
+     */
+    static long parseTime(String time) throws ParseException {
+        if (time.indexOf(':') < 0) {
+            try {
+                return Math.round(Double.parseDouble(time) * 1000.0);
+            } catch (NumberFormatException e) {
+                throw new ParseException("Unparseable time: \"" + time + '"', 0);
+            }
+        }
+        return parse(time.replace('.', ','));
+    }
+
+    /**
+     * @return milliseconds as seconds for {@link #parseTime(String)}, e.g. {@code -2.5}
+     */
+    static String seconds(long millis) {
+        return BigDecimal.valueOf(millis, 3).stripTrailingZeros().toPlainString();
+    }
+
+    static StringBuilder append(StringBuilder builder, long millis) {
+        long hours = millis / 3600000L;
+        if (hours < 10L) {
+            builder.append('0');
+        }
+        builder.append(hours).append(':');
+        append2(builder, (int) (millis / 60000L % 60L)).append(':');
+        append2(builder, (int) (millis / 1000L % 60L)).append(',');
+        int m = (int) (millis % 1000L);
+        return builder.append((char) ('0' + m / 100)).append((char) ('0' + m / 10 % 10)).append((char) ('0' + m % 10));
+    }
+
+    static CharBuffer append(CharBuffer buffer, long millis) {
+        long hours = millis / 3600000L;
+        if (hours < 10L) {
+            buffer.put('0');
+        }
+        appendDigits(buffer, hours).put(':');
+        append2(buffer, (int) (millis / 60000L % 60L)).put(':');
+        append2(buffer, (int) (millis / 1000L % 60L)).put(',');
+        int m = (int) (millis % 1000L);
+        return buffer.put((char) ('0' + m / 100)).put((char) ('0' + m / 10 % 10)).put((char) ('0' + m % 10));
+    }
+
+    private static StringBuilder append2(StringBuilder builder, int i) {
+        return builder.append((char) ('0' + i / 10)).append((char) ('0' + i % 10));
+    }
+
+    private static CharBuffer append2(CharBuffer buffer, int i) {
+        return buffer.put((char) ('0' + i / 10)).put((char) ('0' + i % 10));
+    }
+
+    private static CharBuffer appendDigits(CharBuffer buffer, long l) {
+        long d = 1L;
+        while (d <= l / 10L) {
+            d *= 10L;
+        }
+        for (; d > 0L; d /= 10L) {
+            buffer.put((char) ('0' + l / d % 10L));
+        }
+        return buffer;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+}
@@ -0,0 +1,48 @@
+package myhyuny.subtitle;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * SubRip writer. Cues without plain text are skipped and cues are separated by a blank line,
+ * so the document needs no trimming at the end.
+ *
+ * @author Hyunmin Kang
+ */
+class SubRipWriter extends SubtitleWriter {
+
+    private final StringBuilder plain = new StringBuilder();
+    private int index = 0;
+
+    SubRipWriter(Writer writer, String lineDelimiter) {
+        super(writer, lineDelimiter);
+    }
+
+    @Override
+    protected void write(CueTable cues, int i) throws IOException {
+        long end = getEnd(cues, i);
+        if (end < 0L) {
+            return;
+        }
+
+        plain.setLength(0);
+        if (Subtitle.appendPlain(plain, cues.getType(i), cues.getText(i, text)).length() < 1) {
+            return;
+        }
+
+        if (index > 0) {
+            newLine().newLine();
+        }
+        append(++index).newLine();
+
+        scratch.setLength(0);
+        SubRipTime.append(scratch, getStart(cues, i)).append(" --> ");
+        SubRipTime.append(scratch, end);
+        append(scratch).newLine().append(plain);
+    }
+
+    @Override
+    protected void finish() {
+    }
+
+}
@@ -6,20 +6,26 @@ import static myhyuny.subtitle.Converter.PATTERN_SAMI_NEW_LINE_TAG;
 import static myhyuny.subtitle.Converter.PATTERN_SAMI_TAG;
 import static myhyuny.subtitle.Converter.PATTERN_SPACE;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.regex.Matcher;
 
 /**
+ * One cue as read from a file. Loaded cues are kept in a {@link CueTable}.
+ *
  * @author Hyunmin Kang
  */
-class Subtitle {
+public class Subtitle {
 
-    static final int TYPE_SAMI = 0x1;
-    static final int TYPE_SUB_RIP = 0x1 << 1;
+    public static final int TYPE_SAMI = 0x1;
+    public static final int TYPE_SUB_RIP = 0x1 << 1;
+    public static final int TYPE_WEB_VTT = 0x1 << 2;
     private int type = 0;
     private long start = 0L;
     private long end = 0L;
     private String text;
+    private String settings;
+    private Track track;
     private long sync = 0L;
 
     Subtitle(int type) {
@@ -31,7 +37,12 @@ class Subtitle {
         this.sync = sync;
     }
 
-    Subtitle(int type, long start, long end, String text, long sync) {
+    /**
+     * @param start start time without the sync
+     * @param end   end time without the sync
+     * @param sync  sync of the reader, see {@link SubtitleReader#sync}
+     */
+    public Subtitle(int type, long start, long end, String text, long sync) {
         this(type, sync);
         this.start = start;
         this.end = end;
@@ -42,6 +53,10 @@ class Subtitle {
         this(type, start.getTime(), end.getTime(), text, sync);
     }
 
+    int getType() {
+        return type;
+    }
+
     long getStart() {
         long l = start + sync;
         if (l < 0L) {
@@ -58,6 +73,20 @@ class Subtitle {
         return l;
     }
 
+    /**
+     * Start time without the sync.
+     */
+    long getRawStart() {
+        return start;
+    }
+
+    /**
+     * End time without the sync.
+     */
+    long getRawEnd() {
+        return end;
+    }
+
     void setEnd(long end) {
         this.end = end;
     }
@@ -66,19 +95,95 @@ class Subtitle {
         return text;
     }
 
-    String getSami() {
+    /**
+     * WebVTT cue settings, or {@code null}.
+     */
+    String getSettings() {
+        return settings;
+    }
+
+    public Subtitle setSettings(String settings) {
+        this.settings = settings;
+        return this;
+    }
+
+    /**
+     * SAMI language track, or {@code null}.
+     */
+    Track getTrack() {
+        return track;
+    }
+
+    public Subtitle setTrack(Track track) {
+        this.track = track;
+        return this;
+    }
+
+    SubtitleWriter appendSami(SubtitleWriter writer) throws IOException {
+        return appendSami(writer, type, text);
+    }
+
+    static SubtitleWriter appendSami(SubtitleWriter writer, int type, CharSequence text) throws IOException {
         if (type == TYPE_SAMI) {
-            return text;
+            return writer.append(text);
         }
-        String sami = text;
-        Matcher matcher = Converter.PATTERN_NEW_LINE.matcher(sami);
-        if (matcher.find()) {
-            sami = matcher.replaceAll("<BR>\n");
+        if (type == TYPE_WEB_VTT) {
+            writer.scratch.setLength(0);
+            text = WebVttText.plain(text, writer.scratch);
+        }
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                writer.append("<BR>").newLine();
+            } else {
+                writer.append(c);
+            }
         }
-        return sami;
+        return writer;
     }
 
     String getPlain() {
+        if (type == TYPE_SAMI) {
+            return SamiText.plain(text, new StringBuilder(text.length())).toString();
+        }
+        if (type == TYPE_WEB_VTT) {
+            return WebVttText.plain(text, new StringBuilder(text.length())).toString();
+        }
+        return text;
+    }
+
+    StringBuilder appendPlain(StringBuilder builder) {
+        return appendPlain(builder, type, text);
+    }
+
+    static StringBuilder appendPlain(StringBuilder builder, int type, CharSequence text) {
+        if (type == TYPE_SAMI) {
+            return SamiText.plain(text, builder);
+        }
+        if (type == TYPE_WEB_VTT) {
+            return WebVttText.plain(text, builder);
+        }
+        return builder.append(text);
+    }
+
+    /**
+     * Appends the text as WebVTT cue text. WebVTT text is kept with its markup, SAMI text is reduced
+     * to plain text and escaped, and SubRip text is escaped but for its style tags.
+     */
+    static StringBuilder appendWebVtt(StringBuilder builder, int type, CharSequence text) {
+        if (type == TYPE_WEB_VTT) {
+            return builder.append(text);
+        }
+        if (type == TYPE_SAMI) {
+            return WebVttText.escape(SamiText.plain(text, new StringBuilder(text.length())), builder, false);
+        }
+        return WebVttText.escape(text, builder, true);
+    }
+
+    /**
+     * Former regular expression version of {@link #getPlain()}, kept for comparison.
+     */
+    String getPlainRegex() {
         if (type == TYPE_SAMI) {
             Matcher matcher;
             String str = text.replaceAll("&nbsp;", " ");
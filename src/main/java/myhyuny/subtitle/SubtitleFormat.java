@@ -0,0 +1,50 @@
+package myhyuny.subtitle;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * A subtitle file format. SAMI, SubRip and WebVTT are built in, and more formats are found with
+ * {@link java.util.ServiceLoader} from {@code META-INF/services/myhyuny.subtitle.SubtitleFormat}.
+ * <p>
+ * The cues a reader returns carry the format's {@link #getType() type}, and the built-in writers
+ * take the text of a type they do not know as plain text with {@code \n} between lines.
+ *
+ * @author Hyunmin Kang
+ */
+public interface SubtitleFormat {
+
+    /**
+     * Name shown to the user, e.g. {@code SubRip}.
+     */
+    String getName();
+
+    /**
+     * Type bit of the cues, one of the lowest eight and unique among the formats, e.g.
+     * {@link Subtitle#TYPE_SUB_RIP}.
+     */
+    int getType();
+
+    /**
+     * File extensions in lower case, without the dot. The first is used for output files.
+     */
+    String[] getExtensions();
+
+    /**
+     * Scores the start of a file, decoded with the input charset, for auto-detection. Only the
+     * prefix is looked at, so a probe should not need more than the first few cues.
+     *
+     * @return 0 when the prefix is not in this format, up to 100 when it surely is
+     */
+    int probe(CharSequence prefix);
+
+    SubtitleReader newReader(Reader reader, long sync);
+
+    /**
+     * @param inputCharset charset the cues were read in
+     */
+    SubtitleWriter newWriter(Writer writer, String lineDelimiter, Charset inputCharset) throws IOException;
+
+}
@@ -0,0 +1,184 @@
+package myhyuny.subtitle;
+
+import static java.util.regex.Pattern.CASE_INSENSITIVE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * The built-in formats followed by those found with {@link ServiceLoader}. A format whose type bit
+ * or extension is already taken, or that fails to load, is left out.
+ *
+ * @author Hyunmin Kang
+ */
+final class SubtitleFormats {
+
+    private static final List<SubtitleFormat> FORMATS;
+    private static final AtomicLong SNIFFED = new AtomicLong();
+    private static final AtomicLong MISMATCHES = new AtomicLong();
+    private static final AtomicLong FALLBACKS = new AtomicLong();
+
+    static {
+        List<SubtitleFormat> formats = new ArrayList<>(Arrays.asList(
+            new SamiFormat(), new SubRipFormat(), new WebVttFormat()
+        ));
+        Iterator<SubtitleFormat> i = ServiceLoader.load(SubtitleFormat.class).iterator();
+        while (hasNext(i)) {
+            SubtitleFormat format;
+            try {
+                format = i.next();
+            } catch (ServiceConfigurationError e) {
+                continue;
+            }
+            if (isFree(formats, format)) {
+                formats.add(format);
+            }
+        }
+        FORMATS = Collections.unmodifiableList(formats);
+    }
+
+    private SubtitleFormats() {
+    }
+
+    private static boolean hasNext(Iterator<SubtitleFormat> i) {
+        try {
+            return i.hasNext();
+        } catch (ServiceConfigurationError e) {
+            return false;
+        }
+    }
+
+    private static boolean isFree(List<SubtitleFormat> formats, SubtitleFormat format) {
+        // A type must fit the byte column of CueTable.
+        if (Integer.bitCount(format.getType()) != 1 || format.getType() > 0xFF || format.getExtensions().length == 0) {
+            return false;
+        }
+        for (SubtitleFormat f : formats) {
+            if ((f.getType() & format.getType()) != 0) {
+                return false;
+            }
+            for (String extension : format.getExtensions()) {
+                if (Arrays.asList(f.getExtensions()).contains(extension)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    static List<SubtitleFormat> all() {
+        return FORMATS;
+    }
+
+    /**
+     * @return the format, or {@code null}
+     */
+    static SubtitleFormat forType(int type) {
+        for (SubtitleFormat format : FORMATS) {
+            if (format.getType() == type) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the format, or {@code null}
+     */
+    static SubtitleFormat forExtension(String extension) {
+        for (SubtitleFormat format : FORMATS) {
+            for (String e : format.getExtensions()) {
+                if (e.equalsIgnoreCase(extension)) {
+                    return format;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the formats that scored the prefix above 0, best first
+     */
+    static List<SubtitleFormat> probe(CharSequence prefix) {
+        List<SubtitleFormat> formats = new ArrayList<>(FORMATS.size());
+        int[] scores = new int[FORMATS.size()];
+        for (SubtitleFormat format : FORMATS) {
+            int score = format.probe(prefix);
+            if (score <= 0) {
+                continue;
+            }
+            int i = formats.size();
+            while (i > 0 && scores[i - 1] < score) {
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            scores[i] = score;
+            formats.add(i, format);
+        }
+        return formats;
+    }
+
+    /**
+     * Counts a file whose format was picked from its start.
+     *
+     * @param mismatch whether the pick is not the format of the file extension
+     */
+    static void sniffed(boolean mismatch) {
+        SNIFFED.incrementAndGet();
+        if (mismatch) {
+            MISMATCHES.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a file whose picked format failed to parse, so that the others were tried.
+     */
+    static void fallback() {
+        FALLBACKS.incrementAndGet();
+    }
+
+    /**
+     * @return files whose format was picked from their start, in this process
+     */
+    static long getSniffed() {
+        return SNIFFED.get();
+    }
+
+    /**
+     * @return files whose content is in another format than their extension
+     */
+    static long getMismatches() {
+        return MISMATCHES.get();
+    }
+
+    /**
+     * @return files parsed more than once because the picked format failed
+     */
+    static long getFallbacks() {
+        return FALLBACKS.get();
+    }
+
+    /**
+     * Pattern of the file names of every format. Group 1 is the extension.
+     */
+    static Pattern extensionPattern() {
+        StringBuilder pattern = new StringBuilder("\\.(");
+        for (SubtitleFormat format : FORMATS) {
+            for (String extension : format.getExtensions()) {
+                if (pattern.length() > 3) {
+                    pattern.append('|');
+                }
+                pattern.append(Pattern.quote(extension));
+            }
+        }
+        return Pattern.compile(pattern.append(")$").toString(), CASE_INSENSITIVE);
+    }
+
+}
@@ -0,0 +1,54 @@
+package myhyuny.subtitle;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+
+/**
+ * Pulls {@link Subtitle} records from a character stream one cue at a time.
+ *
+ * @author Hyunmin Kang
+ */
+public abstract class SubtitleReader implements Closeable {
+
+    protected final BufferedReader reader;
+    protected final long sync;
+    protected boolean matched = false;
+    protected int count = 0;
+
+    protected SubtitleReader(Reader reader, long sync) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.sync = sync;
+    }
+
+    /**
+     * Reads the next cue. Set {@link #matched} once the stream shows this format and count the cues
+     * in {@link #count} for error messages.
+     *
+     * @return next cue, or {@code null} at the end of the stream
+     */
+    protected abstract Subtitle read() throws IOException, ParseException;
+
+    /**
+     * @return {@code true} once the stream has shown the structure of this reader's format
+     */
+    boolean isMatched() {
+        return matched;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    static boolean isSpace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
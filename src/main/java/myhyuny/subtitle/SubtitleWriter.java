@@ -0,0 +1,104 @@
+package myhyuny.subtitle;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes {@link Subtitle} records to a character stream one cue at a time. New lines are written
+ * as the line delimiter while the text is emitted, so the document is never held in memory.
+ *
+ * @author Hyunmin Kang
+ */
+public abstract class SubtitleWriter implements Closeable {
+
+    private final Writer writer;
+    private final String lineDelimiter;
+    private final char[] buffer = new char[8192];
+    private int position = 0;
+    private long sync = 0L;
+    protected final StringBuilder scratch = new StringBuilder();
+    protected final CueTable.Text text = new CueTable.Text();
+
+    protected SubtitleWriter(Writer writer, String lineDelimiter) {
+        this.writer = writer;
+        this.lineDelimiter = lineDelimiter;
+    }
+
+    /**
+     * Offset added to every time. Times that would fall before zero are written as zero.
+     */
+    final SubtitleWriter setSync(long sync) {
+        this.sync = sync;
+        return this;
+    }
+
+    protected final long getStart(CueTable cues, int i) {
+        return Math.max(cues.getStart(i) + sync, 0L);
+    }
+
+    protected final long getEnd(CueTable cues, int i) {
+        return Math.max(cues.getEnd(i) + sync, 0L);
+    }
+
+    /**
+     * Writes cue {@code i}. Text of another format's type is plain text, see {@link SubtitleFormat}.
+     */
+    protected abstract void write(CueTable cues, int i) throws IOException;
+
+    /**
+     * Writes the end of the document.
+     */
+    protected abstract void finish() throws IOException;
+
+    protected final SubtitleWriter append(char c) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = c;
+        return this;
+    }
+
+    /**
+     * Appends text, writing each {@code \n} as the line delimiter.
+     */
+    protected final SubtitleWriter append(CharSequence s) throws IOException {
+        for (int i = 0, length = s.length(); i < length; i++) {
+            char c = s.charAt(i);
+            if (c == '\n') {
+                newLine();
+            } else {
+                append(c);
+            }
+        }
+        return this;
+    }
+
+    protected final SubtitleWriter append(long l) throws IOException {
+        scratch.setLength(0);
+        return append(scratch.append(l));
+    }
+
+    protected final SubtitleWriter newLine() throws IOException {
+        for (int i = 0, length = lineDelimiter.length(); i < length; i++) {
+            append(lineDelimiter.charAt(i));
+        }
+        return this;
+    }
+
+    private void flushBuffer() throws IOException {
+        writer.write(buffer, 0, position);
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+            flushBuffer();
+        } finally {
+            writer.close();
+        }
+    }
+
+}
@@ -0,0 +1,295 @@
+package myhyuny.subtitle;
+
+import java.util.Arrays;
+
+/**
+ * Finds the {@link Retiming} that lays the cue starts of a file over those of a reference for the
+ * same video, e.g. a well timed English SubRip file. Every pair of starts no more than
+ * {@link #MAX_SHIFT} apart votes for its difference in a histogram, walked with a sweep over both
+ * sorted lists, and the densest window of votes gives the offset. This is tried at the usual frame
+ * rate ratios, then refined with a least squares line through the starts matched within
+ * {@link #TOLERANCE}. The starts need not pair one to one, as translations split lines differently.
+ *
+ * @author Hyunmin Kang
+ */
+final class SyncAligner {
+
+    /**
+     * Largest offset looked for, in milliseconds.
+     */
+    static final long MAX_SHIFT = 300000L;
+
+    /**
+     * Largest distance of a matched start from its reference, in milliseconds.
+     */
+    static final long TOLERANCE = 400L;
+
+    private static final long BIN = 100L;
+    private static final int WINDOW = (int) (2L * TOLERANCE / BIN) + 1;
+    private static final int CHUNK = 40;
+    private static final int SAMPLE = 512;
+    private static final double[] SCALES = {
+        1.0,
+        25.0 / (24000.0 / 1001.0), (24000.0 / 1001.0) / 25.0,
+        24.0 / (24000.0 / 1001.0), (24000.0 / 1001.0) / 24.0,
+        25.0 / 24.0, 24.0 / 25.0,
+        30.0 / (30000.0 / 1001.0), (30000.0 / 1001.0) / 30.0,
+    };
+
+    private final long[] reference;
+    private final int[] votes = new int[(int) (2L * MAX_SHIFT / BIN) + 1];
+    private int matched;
+
+    /**
+     * @param reference cue starts of the reference, sorted
+     */
+    SyncAligner(long[] reference) {
+        this.reference = reference;
+    }
+
+    /**
+     * @return starts of the cues, sorted and without repeats
+     */
+    static long[] onsets(long[] starts, int size) {
+        long[] onsets = Arrays.copyOf(starts, size);
+        Arrays.sort(onsets);
+        int n = 0;
+        for (int i = 0; i < onsets.length; i++) {
+            if (n == 0 || onsets[i] != onsets[n - 1]) {
+                onsets[n++] = onsets[i];
+            }
+        }
+        return Arrays.copyOf(onsets, n);
+    }
+
+    /**
+     * @param onsets   cue starts of the file to align, sorted
+     * @param piecewise whether parts of the file may have offsets of their own, e.g. around cut scenes
+     * @return the map from the file to the reference
+     * @throws SubtitleException if too few starts match
+     */
+    Retiming align(long[] onsets, boolean piecewise) {
+        if (onsets.length == 0 || reference.length == 0) {
+            throw new SubtitleException("No cues to align.");
+        }
+
+        // The frame rates are told apart on a sample, the line through all starts settles the rest.
+        int step = (onsets.length + SAMPLE - 1) / SAMPLE;
+        double scale = 1.0;
+        double offset = 0.0;
+        int best = -1;
+        for (double s : SCALES) {
+            double o = vote(onsets, 0, onsets.length, step, s, 0.0);
+            int count = match(onsets, 0, onsets.length, s, o, null);
+            // A frame rate must match clearly more starts to be taken over none.
+            if (count > best + (best >> 4)) {
+                best = count;
+                scale = s;
+                offset = o;
+            }
+        }
+
+        double[] line = {scale, offset};
+        for (int pass = 0; pass < 2; pass++) {
+            fit(onsets, line);
+        }
+        int m = match(onsets, 0, onsets.length, line[0], line[1], null);
+        if (m < Math.max(3, onsets.length / 5)) {
+            matched = 0;
+            throw new SubtitleException("No alignment found. (" + m + " of " + onsets.length + " cues matched)");
+        }
+
+        long span = onsets[onsets.length - 1] - onsets[0];
+        boolean linear = Math.abs(line[0] - 1.0) * span >= TOLERANCE / 2.0;
+        Retiming retiming;
+        if (piecewise) {
+            retiming = segments(onsets, linear ? line[0] : 1.0, line[1]);
+        } else {
+            retiming = linear ? Retiming.linear(line[0], Math.round(line[1])) : Retiming.offset(Math.round(line[1]));
+        }
+        long[] mapped = new long[onsets.length];
+        for (int i = 0; i < onsets.length; i++) {
+            mapped[i] = retiming.apply(onsets[i]);
+        }
+        matched = match(mapped, 0, mapped.length, 1.0, 0.0, null);
+        return retiming;
+    }
+
+    /**
+     * @return starts within {@link #TOLERANCE} of the reference after the last
+     * {@link #align(long[], boolean)}
+     */
+    int getMatched() {
+        return matched;
+    }
+
+    /**
+     * @return the offset most pairs agree on, at {@code scale}
+     */
+    private double vote(long[] onsets, int from, int to, int step, double scale, double base) {
+        Arrays.fill(votes, 0);
+        int low = Arrays.binarySearch(reference, (long) (onsets[from] * scale + base - MAX_SHIFT));
+        low = low < 0 ? -low - 1 : low;
+        for (int i = from; i < to; i += step) {
+            double t = onsets[i] * scale + base;
+            while (low < reference.length && reference[low] < t - MAX_SHIFT) {
+                low++;
+            }
+            for (int j = low; j < reference.length && reference[j] <= t + MAX_SHIFT; j++) {
+                votes[(int) ((reference[j] - t + MAX_SHIFT) / BIN)]++;
+            }
+        }
+
+        int sum = 0;
+        int bestSum = -1;
+        int bestBin = 0;
+        for (int b = 0; b < votes.length; b++) {
+            sum += votes[b];
+            if (b >= WINDOW) {
+                sum -= votes[b - WINDOW];
+            }
+            if (sum > bestSum) {
+                bestSum = sum;
+                bestBin = b - WINDOW / 2;
+            }
+        }
+        return base + bestBin * BIN + BIN / 2.0 - MAX_SHIFT;
+    }
+
+    /**
+     * @param residuals if not {@code null}, gets the distance to the reference of each start, or
+     *                  {@link Double#NaN} if unmatched
+     * @return starts within {@link #TOLERANCE} of a reference start
+     */
+    private int match(long[] onsets, int from, int to, double scale, double offset, double[] residuals) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            double t = onsets[i] * scale + offset;
+            int j = Arrays.binarySearch(reference, (long) Math.ceil(t));
+            if (j < 0) {
+                j = -j - 1;
+            }
+            double d = Double.MAX_VALUE;
+            if (j < reference.length) {
+                d = reference[j] - t;
+            }
+            if (j > 0 && t - reference[j - 1] < Math.abs(d)) {
+                d = reference[j - 1] - t;
+            }
+            boolean hit = Math.abs(d) <= TOLERANCE;
+            if (hit) {
+                count++;
+            }
+            if (residuals != null) {
+                residuals[i] = hit ? d : Double.NaN;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Least squares line through the matched starts and their references.
+     */
+    private void fit(long[] onsets, double[] line) {
+        double[] residuals = new double[onsets.length];
+        match(onsets, 0, onsets.length, line[0], line[1], residuals);
+        double n = 0.0;
+        double sx = 0.0;
+        double sy = 0.0;
+        double sxx = 0.0;
+        double sxy = 0.0;
+        for (int i = 0; i < onsets.length; i++) {
+            if (Double.isNaN(residuals[i])) {
+                continue;
+            }
+            double x = onsets[i];
+            double y = x * line[0] + line[1] + residuals[i];
+            n++;
+            sx += x;
+            sy += y;
+            sxx += x * x;
+            sxy += x * y;
+        }
+        if (n < 2.0) {
+            return;
+        }
+        double d = n * sxx - sx * sx;
+        if (d > 0.0 && n >= 8.0) {
+            double scale = (n * sxy - sx * sy) / d;
+            if (scale > 0.0) {
+                line[0] = scale;
+            }
+        }
+        line[1] = (sy - line[0] * sx) / n;
+    }
+
+    /**
+     * Offsets of runs of {@link #CHUNK} starts over the line, with neighbours that agree merged, as
+     * anchors at the first and last start of each part.
+     */
+    private Retiming segments(long[] onsets, double scale, double offset) {
+        int chunks = (onsets.length + CHUNK - 1) / CHUNK;
+        double[] shifts = new double[chunks];
+        double[] residuals = new double[onsets.length];
+        for (int c = 0; c < chunks; c++) {
+            int from = c * CHUNK;
+            int to = Math.min(from + CHUNK, onsets.length);
+            double shift = vote(onsets, from, to, 1, scale, offset) - offset;
+            int m = match(onsets, from, to, scale, offset + shift, residuals);
+            // A run that matches poorly keeps the offset before it.
+            shifts[c] = m * 3 >= to - from ? shift + mean(residuals, from, to) : c > 0 ? shifts[c - 1] : Double.NaN;
+        }
+        for (int c = chunks - 1; c >= 0; c--) {
+            if (Double.isNaN(shifts[c])) {
+                shifts[c] = c + 1 < chunks ? shifts[c + 1] : 0.0;
+            }
+        }
+
+        long[] sources = new long[chunks * 2];
+        long[] targets = new long[chunks * 2];
+        int n = 0;
+        for (int c = 0; c < chunks; ) {
+            int end = c + 1;
+            double sum = shifts[c];
+            while (end < chunks && Math.abs(shifts[end] - sum / (end - c)) <= TOLERANCE / 2.0) {
+                sum += shifts[end++];
+            }
+            double shift = sum / (end - c);
+            long first = onsets[c * CHUNK];
+            long last = onsets[Math.min(end * CHUNK, onsets.length) - 1];
+            n = anchor(sources, targets, n, first, first * scale + offset + shift);
+            n = anchor(sources, targets, n, last, last * scale + offset + shift);
+            c = end;
+        }
+        if (n == 1) {
+            return Retiming.offset(targets[0] - sources[0]);
+        }
+        return Retiming.anchors(Arrays.copyOf(sources, n), Arrays.copyOf(targets, n));
+    }
+
+    /**
+     * Adds an anchor unless it would run back over the one before.
+     */
+    private static int anchor(long[] sources, long[] targets, int n, long source, double target) {
+        long t = Math.round(target);
+        if (n > 0 && (source <= sources[n - 1] || t <= targets[n - 1])) {
+            return n;
+        }
+        sources[n] = source;
+        targets[n] = t;
+        return n + 1;
+    }
+
+    private static double mean(double[] values, int from, int to) {
+        double sum = 0.0;
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            if (!Double.isNaN(values[i])) {
+                sum += values[i];
+                n++;
+            }
+        }
+        return n == 0 ? 0.0 : sum / n;
+    }
+
+}
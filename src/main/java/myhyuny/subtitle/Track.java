@@ -0,0 +1,101 @@
+package myhyuny.subtitle;
+
+import java.util.Locale;
+
+/**
+ * Language track of a SAMI file, a paragraph class such as {@code KRCC} with the name and language
+ * from its style rule {@code .KRCC { Name: Korean; lang: ko-KR; }}.
+ *
+ * @author Hyunmin Kang
+ */
+public final class Track {
+
+    static final Track KOREAN = new Track("KRCC", "Korean", "ko-KR");
+
+    private final String className;
+    private final String name;
+    private final String lang;
+
+    /**
+     * @param name display name, or {@code null}
+     * @param lang language tag, or {@code null}
+     */
+    Track(String className, String name, String lang) {
+        this.className = className;
+        this.name = name;
+        this.lang = lang;
+    }
+
+    /**
+     * Track of the usual class for a language, e.g. {@code KRCC} for {@code ko} and {@code ENCC} for
+     * {@code en}.
+     */
+    static Track forLanguage(String lang) {
+        Locale locale = Locale.forLanguageTag(lang);
+        switch (locale.getLanguage()) {
+            case "ko":
+                return KOREAN;
+            case "en":
+                return new Track("ENCC", "English", "en-US");
+            case "ja":
+                return new Track("JPCC", "Japanese", "ja-JP");
+            case "zh":
+                return new Track("CNCC", "Chinese", "zh-CN");
+        }
+        return new Track(locale.getLanguage().toUpperCase(Locale.ROOT) + "CC",
+            locale.getDisplayLanguage(Locale.ENGLISH), locale.toLanguageTag());
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLang() {
+        return lang;
+    }
+
+    /**
+     * Whether {@code selector} names this track, by class name, language tag or language, e.g.
+     * {@code ENCC}, {@code en-US} or {@code en}.
+     */
+    boolean matches(String selector) {
+        if (className.equalsIgnoreCase(selector)) {
+            return true;
+        }
+        return lang != null && (lang.equalsIgnoreCase(selector)
+            || Locale.forLanguageTag(lang).getLanguage().equalsIgnoreCase(selector));
+    }
+
+    /**
+     * Name part for a file of this track only, the language if known, e.g. {@code en} for
+     * {@code movie.en.srt}.
+     */
+    String getSuffix() {
+        String language = lang == null ? "" : Locale.forLanguageTag(lang).getLanguage();
+        return language.isEmpty() ? className.toLowerCase(Locale.ROOT) : language;
+    }
+
+    /**
+     * The style rule, {@code .KRCC { Name: Korean; lang: ko-KR; }}.
+     */
+    String getStyle() {
+        StringBuilder style = new StringBuilder().append('.').append(className).append(" {");
+        if (name != null) {
+            style.append(" Name: ").append(name).append(';');
+        }
+        if (lang != null) {
+            style.append(" lang: ").append(lang).append(';');
+        }
+        return style.append(" }").toString();
+    }
+
+    @Override
+    public String toString() {
+        return className;
+    }
+
+}
@@ -0,0 +1,55 @@
+package myhyuny.subtitle;
+
+import static myhyuny.subtitle.Subtitle.TYPE_WEB_VTT;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * WebVTT.
+ *
+ * @author Hyunmin Kang
+ */
+class WebVttFormat implements SubtitleFormat {
+
+    @Override
+    public String getName() {
+        return "WebVTT";
+    }
+
+    @Override
+    public int getType() {
+        return TYPE_WEB_VTT;
+    }
+
+    @Override
+    public String[] getExtensions() {
+        return new String[]{"vtt"};
+    }
+
+    /**
+     * The {@code WEBVTT} signature is sure.
+     */
+    @Override
+    public int probe(CharSequence prefix) {
+        String s = prefix.length() > 0 && prefix.charAt(0) == '\uFEFF'
+            ? prefix.subSequence(1, prefix.length()).toString() : prefix.toString();
+        if (!s.startsWith("WEBVTT")) {
+            return 0;
+        }
+        return s.length() == 6 || SubtitleReader.isSpace(s.charAt(6)) ? 100 : 0;
+    }
+
+    @Override
+    public SubtitleReader newReader(Reader reader, long sync) {
+        return new WebVttReader(reader, sync);
+    }
+
+    @Override
+    public SubtitleWriter newWriter(Writer writer, String lineDelimiter, Charset inputCharset) throws IOException {
+        return new WebVttWriter(writer, lineDelimiter);
+    }
+
+}
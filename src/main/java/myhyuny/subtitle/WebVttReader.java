@@ -0,0 +1,270 @@
+package myhyuny.subtitle;
+
+import static myhyuny.subtitle.Subtitle.TYPE_WEB_VTT;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * WebVTT reader. The file must begin with {@code WEBVTT}. {@code NOTE}, {@code STYLE} and
+ * {@code REGION} blocks are skipped, cue identifiers are dropped and cue settings are kept with the
+ * cue. Cues whose timing cannot be parsed are skipped, as a browser would.
+ * <p>
+ * A header {@code X-TIMESTAMP-MAP=MPEGTS:900000,LOCAL:00:00:00.000}, as written for HLS, maps cue
+ * times onto the MPEG-TS timeline. Cues are read relative to MPEG-TS time
+ * {@code subtitle.vtt.mpegtsBase} (900000, 10 seconds, by default), so the usual header leaves the
+ * times as they are.
+ *
+ * @author Hyunmin Kang
+ */
+class WebVttReader extends SubtitleReader {
+
+    static final long MPEGTS_BASE = Long.getLong("subtitle.vtt.mpegtsBase", 900000L);
+
+    private final StringBuilder line = new StringBuilder();
+    private final StringBuilder text = new StringBuilder();
+    private boolean header = true;
+    private boolean again = false;
+    private boolean eof = false;
+    private long offset = 0L;
+    private long start;
+    private long end;
+    private String settings;
+
+    WebVttReader(Reader reader, long sync) {
+        super(reader, sync);
+    }
+
+    @Override
+    protected Subtitle read() throws IOException {
+        if (header) {
+            header = false;
+            if (!readHeader()) {
+                return null;
+            }
+        }
+
+        while (readLine()) {
+            if (isBlank(line)) {
+                continue;
+            }
+            if (startsWithWord(line, "NOTE") || startsWithWord(line, "STYLE") || startsWithWord(line, "REGION")) {
+                skipBlock();
+                continue;
+            }
+
+            // The first line is the cue identifier unless it is the timing.
+            if (line.indexOf("-->") < 0 && (!readLine() || isBlank(line))) {
+                continue;
+            }
+            if (!parseTiming(line)) {
+                skipBlock();
+                continue;
+            }
+
+            text.setLength(0);
+            while (readLine() && !isBlank(line)) {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(line);
+            }
+            if (text.length() == 0) {
+                continue;
+            }
+
+            count++;
+            return new Subtitle(TYPE_WEB_VTT, start + offset, end + offset, text.toString(), sync).setSettings(settings);
+        }
+        return null;
+    }
+
+    /**
+     * Reads the signature and the header up to the first blank line.
+     */
+    private boolean readHeader() throws IOException {
+        if (!readLine()) {
+            return false;
+        }
+        int i = line.length() > 0 && line.charAt(0) == '\uFEFF' ? 1 : 0;
+        if (!startsWithWord(line.substring(i), "WEBVTT")) {
+            return false;
+        }
+        matched = true;
+
+        while (readLine() && !isBlank(line)) {
+            if (line.indexOf("-->") >= 0) {
+                // A cue without the blank line after the header.
+                again = true;
+                break;
+            }
+            if (line.indexOf("X-TIMESTAMP-MAP=") == 0) {
+                parseTimestampMap(line.substring(16));
+            }
+        }
+        return true;
+    }
+
+    private void parseTimestampMap(String map) {
+        long mpegts = MPEGTS_BASE;
+        long local = 0L;
+        for (String field : map.split(",")) {
+            field = field.trim();
+            try {
+                if (field.startsWith("MPEGTS:")) {
+                    mpegts = Long.parseLong(field.substring(7).trim());
+                } else if (field.startsWith("LOCAL:")) {
+                    String time = field.substring(6).trim();
+                    if ((local = parseTime(time, 0, time.length())) < 0L) {
+                        return;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return;
+            }
+        }
+        offset = (mpegts - MPEGTS_BASE) / 90 - local;
+    }
+
+    /**
+     * Parses {@code start --> end settings}.
+     */
+    private boolean parseTiming(StringBuilder s) {
+        int arrow = s.indexOf("-->");
+        if (arrow < 0) {
+            return false;
+        }
+        int from = 0, to = arrow;
+        while (from < to && isSpace(s.charAt(from))) {
+            from++;
+        }
+        while (to > from && isSpace(s.charAt(to - 1))) {
+            to--;
+        }
+        if ((start = parseTime(s, from, to)) < 0L) {
+            return false;
+        }
+
+        int length = s.length();
+        from = arrow + 3;
+        while (from < length && isSpace(s.charAt(from))) {
+            from++;
+        }
+        to = from;
+        while (to < length && !isSpace(s.charAt(to))) {
+            to++;
+        }
+        if ((end = parseTime(s, from, to)) < 0L) {
+            return false;
+        }
+
+        while (to < length && isSpace(s.charAt(to))) {
+            to++;
+        }
+        int last = length;
+        while (last > to && isSpace(s.charAt(last - 1))) {
+            last--;
+        }
+        settings = last > to ? s.substring(to, last) : null;
+        return true;
+    }
+
+    /**
+     * Parses {@code [hh:]mm:ss.ttt}. A comma is taken for the dot as well.
+     *
+     * @return milliseconds, or {@code -1}
+     */
+    static long parseTime(CharSequence s, int from, int to) {
+        long time = 0L;
+        int fields = 0;
+        int digits = 0;
+        long value = 0L;
+        int i = from;
+        for (; i < to; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (++digits > 10) {
+                    return -1L;
+                }
+            } else if (c == ':' && digits > 0 && fields < 2) {
+                time = time * 60 + value;
+                value = 0L;
+                digits = 0;
+                fields++;
+            } else if ((c == '.' || c == ',') && fields > 0 && digits == 2) {
+                break;
+            } else {
+                return -1L;
+            }
+        }
+        if (i == to || fields < 1 || value > 59 || to - i != 4) {
+            return -1L;
+        }
+        time = time * 60 + value;
+
+        long millis = 0L;
+        for (i++; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1L;
+            }
+            millis = millis * 10 + (c - '0');
+        }
+        return time * 1000 + millis;
+    }
+
+    private void skipBlock() throws IOException {
+        while (readLine() && !isBlank(line)) {
+        }
+    }
+
+    private boolean readLine() throws IOException {
+        if (again) {
+            again = false;
+            return true;
+        }
+        if (eof) {
+            return false;
+        }
+        line.setLength(0);
+        for (int c; (c = reader.read()) != -1; ) {
+            if (c == '\n') {
+                return true;
+            }
+            if (c == '\r') {
+                reader.mark(1);
+                if (reader.read() != '\n') {
+                    reader.reset();
+                }
+                return true;
+            }
+            line.append((char) c);
+        }
+        eof = true;
+        return line.length() > 0;
+    }
+
+    private static boolean startsWithWord(CharSequence s, String word) {
+        int length = word.length();
+        if (s.length() < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return s.length() == length || s.charAt(length) == ' ' || s.charAt(length) == '\t';
+    }
+
+    private static boolean isBlank(CharSequence line) {
+        for (int i = 0, length = line.length(); i < length; i++) {
+            if (line.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
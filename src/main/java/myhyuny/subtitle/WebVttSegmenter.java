@@ -0,0 +1,146 @@
+package myhyuny.subtitle;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import myhyuny.subtitle.io.IO;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes cues as WebVTT segments of a fixed duration with an HLS media playlist. Segments are named
+ * after the playlist, {@code movie.m3u8} and {@code movie-0.vtt}, {@code movie-1.vtt}, and so on, and
+ * every segment covers its time span, even an empty one, as HLS expects. A cue is written to each
+ * segment it overlaps.
+ * <p>
+ * Cues are taken in order of start time and a segment is written as soon as a cue starts after it,
+ * so only the cues still showing are held. Segments are UTF-8 and map local time zero to MPEG-TS
+ * {@code subtitle.vtt.mpegtsBase}.
+ *
+ * @author Hyunmin Kang
+ */
+class WebVttSegmenter implements Closeable {
+
+    private final File playlist;
+    private final String name;
+    private final long duration;
+    private final String lineDelimiter;
+    private final Writer writer;
+    private long sync;
+    private CueTable cues;
+    private int[] active = new int[16];
+    private int activeSize = 0;
+    private int segment = 0;
+    private long last = 0L;
+
+    /**
+     * @param duration segment length in milliseconds
+     */
+    WebVttSegmenter(File playlist, long duration, String lineDelimiter) throws IOException {
+        if (duration <= 0L) {
+            throw new IllegalArgumentException("Segment duration must be positive: " + duration);
+        }
+        this.playlist = playlist;
+        this.name = playlist.getName().replaceFirst("\\.[^.]*$", "");
+        this.duration = duration;
+        this.lineDelimiter = lineDelimiter;
+
+        writer = IO.newWriter(FileChannel.open(playlist.toPath(), CREATE, TRUNCATE_EXISTING, WRITE), UTF_8);
+        writer.write("#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-PLAYLIST-TYPE:VOD\n#EXT-X-MEDIA-SEQUENCE:0\n");
+        writer.write("#EXT-X-TARGETDURATION:" + (duration + 999) / 1000 + '\n');
+    }
+
+    WebVttSegmenter setSync(long sync) {
+        this.sync = sync;
+        return this;
+    }
+
+    /**
+     * @return the playlist and the segments written so far, in order
+     */
+    List<File> getFiles() {
+        List<File> files = new ArrayList<>(segment + 1);
+        files.add(playlist);
+        for (int i = 0; i < segment; i++) {
+            files.add(getSegment(i));
+        }
+        return files;
+    }
+
+    private File getSegment(int index) {
+        return new File(playlist.getParentFile(), name + '-' + index + ".vtt");
+    }
+
+    void write(CueTable cues, int i) throws IOException {
+        this.cues = cues;
+        long start = Math.max(cues.getStart(i) + sync, 0L);
+        while (start >= (segment + 1) * duration) {
+            flush(duration);
+        }
+
+        if (activeSize == active.length) {
+            active = Arrays.copyOf(active, activeSize * 2);
+        }
+        active[activeSize++] = i;
+        last = Math.max(last, Math.max(cues.getEnd(i) + sync, 0L));
+    }
+
+    /**
+     * Writes the current segment with the cues showing in it and drops the cues that end with it.
+     */
+    private void flush(long length) throws IOException {
+        long from = segment * duration;
+        long to = from + duration;
+        File file = getSegment(segment);
+        try (WebVttWriter vtt = new WebVttWriter(
+            IO.newWriter(FileChannel.open(file.toPath(), CREATE, TRUNCATE_EXISTING, WRITE), UTF_8),
+            lineDelimiter, "MPEGTS:" + WebVttReader.MPEGTS_BASE + ",LOCAL:00:00:00.000"
+        )) {
+            vtt.setSync(sync);
+            int kept = 0;
+            for (int k = 0; k < activeSize; k++) {
+                int i = active[k];
+                long end = Math.max(cues.getEnd(i) + sync, 0L);
+                if (end > from) {
+                    vtt.write(cues, i);
+                }
+                if (end > to) {
+                    active[kept++] = i;
+                }
+            }
+            activeSize = kept;
+        }
+
+        writer.write(String.format(Locale.ROOT, "#EXTINF:%.3f,\n", length / 1000.0));
+        writer.write(file.getName());
+        writer.write('\n');
+        segment++;
+    }
+
+    /**
+     * Writes the remaining segments up to the end of the last cue and ends the playlist.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            do {
+                long from = segment * duration;
+                flush(Math.min(duration, Math.max(last - from, 1L)));
+            } while (segment * duration < last);
+            writer.write("#EXT-X-ENDLIST\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+}
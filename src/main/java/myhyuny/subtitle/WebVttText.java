@@ -0,0 +1,146 @@
+package myhyuny.subtitle;
+
+/**
+ * Converts between WebVTT cue text and plain text. Cue text keeps its lines, so unlike SAMI a new
+ * line in the markup is a new line in the plain text.
+ *
+ * @author Hyunmin Kang
+ */
+final class WebVttText {
+
+    private static final int ENTITY_MAX_LENGTH = 10;
+
+    private WebVttText() {
+    }
+
+    /**
+     * Appends the plain text of {@code vtt} to {@code out}: tags such as {@code <i>}, {@code <c.yellow>},
+     * {@code <v Speaker>} and timestamps are dropped, character references are decoded and every line
+     * is trimmed.
+     */
+    static StringBuilder plain(CharSequence vtt, StringBuilder out) {
+        int begin = out.length();
+        int line = begin;
+
+        for (int i = 0, length = vtt.length(); i < length; i++) {
+            char c = vtt.charAt(i);
+
+            if (c == '<') {
+                int close = indexOf(vtt, '>', i + 1, length);
+                if (close >= 0) {
+                    i = close;
+                    continue;
+                }
+            } else if (c == '&') {
+                int end = indexOf(vtt, ';', i + 1, Math.min(length, i + 1 + ENTITY_MAX_LENGTH));
+                int code = end > i + 1 ? SamiText.decode(vtt, i + 1, end) : -1;
+                if (code >= 0) {
+                    out.appendCodePoint(code == 0xA0 ? ' ' : code);
+                    i = end;
+                    continue;
+                }
+            } else if (c == '\n') {
+                trim(out, line);
+                if (out.length() > line) {
+                    out.append('\n');
+                }
+                line = out.length();
+                continue;
+            } else if (out.length() == line && SubtitleReader.isSpace(c)) {
+                continue;
+            }
+
+            out.append(c);
+        }
+
+        trim(out, begin);
+        return out;
+    }
+
+    /**
+     * Appends plain text as cue text: {@code &}, {@code <} and {@code >} are escaped and blank lines,
+     * which would end the cue, are dropped.
+     *
+     * @param styles keep the {@code <i>}, {@code <b>} and {@code <u>} tags SubRip players understand
+     */
+    static StringBuilder escape(CharSequence plain, StringBuilder out, boolean styles) {
+        int begin = out.length();
+        int line = begin;
+
+        for (int i = 0, length = plain.length(); i < length; i++) {
+            char c = plain.charAt(i);
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    int tag = styles ? styleTag(plain, i) : -1;
+                    if (tag > i) {
+                        for (; i <= tag; i++) {
+                            out.append(Character.toLowerCase(plain.charAt(i)));
+                        }
+                        i--;
+                    } else {
+                        out.append("&lt;");
+                    }
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '\r':
+                    break;
+                case '\n':
+                    trim(out, line);
+                    if (out.length() > line) {
+                        out.append('\n');
+                    }
+                    line = out.length();
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+
+        trim(out, begin);
+        return out;
+    }
+
+    /**
+     * @return index of the {@code >} closing an {@code <i>}, {@code <b>} or {@code <u>} tag at {@code i}, or {@code -1}
+     */
+    private static int styleTag(CharSequence s, int i) {
+        int p = i + 1, length = s.length();
+        if (p < length && s.charAt(p) == '/') {
+            p++;
+        }
+        if (p + 1 >= length || s.charAt(p + 1) != '>') {
+            return -1;
+        }
+        switch (s.charAt(p) | 0x20) {
+            case 'i':
+            case 'b':
+            case 'u':
+                return p + 1;
+            default:
+                return -1;
+        }
+    }
+
+    private static void trim(StringBuilder out, int from) {
+        int end = out.length();
+        while (end > from && SubtitleReader.isSpace(out.charAt(end - 1))) {
+            end--;
+        }
+        out.setLength(end);
+    }
+
+    private static int indexOf(CharSequence s, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,67 @@
+package myhyuny.subtitle;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * WebVTT writer. WebVTT cues keep their markup and settings, other cues are written as escaped
+ * plain text. Cues without text are skipped.
+ *
+ * @author Hyunmin Kang
+ */
+class WebVttWriter extends SubtitleWriter {
+
+    private final StringBuilder cue = new StringBuilder();
+
+    /**
+     * @param timestampMap value of the {@code X-TIMESTAMP-MAP} header, or {@code null} for none
+     */
+    WebVttWriter(Writer writer, String lineDelimiter, String timestampMap) throws IOException {
+        super(writer, lineDelimiter);
+
+        append("WEBVTT\n");
+        if (timestampMap != null) {
+            append("X-TIMESTAMP-MAP=").append(timestampMap).newLine();
+        }
+    }
+
+    WebVttWriter(Writer writer, String lineDelimiter) throws IOException {
+        this(writer, lineDelimiter, null);
+    }
+
+    @Override
+    protected void write(CueTable cues, int i) throws IOException {
+        long end = getEnd(cues, i);
+        if (end < 0L) {
+            return;
+        }
+
+        cue.setLength(0);
+        if (Subtitle.appendWebVtt(cue, cues.getType(i), cues.getText(i, text)).length() < 1) {
+            return;
+        }
+
+        scratch.setLength(0);
+        appendTime(scratch, getStart(cues, i)).append(" --> ");
+        appendTime(scratch, end);
+        String settings = cues.getSettings(i);
+        if (settings != null) {
+            scratch.append(' ').append(settings);
+        }
+        newLine().append(scratch).newLine().append(cue).newLine();
+    }
+
+    @Override
+    protected void finish() {
+    }
+
+    /**
+     * Appends {@code hh:mm:ss.ttt}, the SubRip time with a dot.
+     */
+    static StringBuilder appendTime(StringBuilder builder, long time) {
+        SubRipTime.append(builder, time);
+        builder.setCharAt(builder.length() - 4, '.');
+        return builder;
+    }
+
+}
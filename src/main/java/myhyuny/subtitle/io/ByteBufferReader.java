@@ -0,0 +1,75 @@
+package myhyuny.subtitle.io;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * Decodes a buffer that already holds the whole input straight into the caller's array,
+ * with no intermediate byte buffer.
+ *
+ * @author Hyunmin Kang
+ */
+class ByteBufferReader extends Reader {
+
+    private final ByteBuffer in;
+    private final CharsetDecoder decoder;
+    private final CharBuffer pair = CharBuffer.allocate(2);
+    private boolean done = false;
+
+    ByteBufferReader(ByteBuffer in, CharsetDecoder decoder) {
+        this.in = in;
+        this.decoder = decoder;
+        pair.flip();
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (pair.hasRemaining()) {
+            cbuf[off] = pair.get();
+            return 1;
+        }
+
+        if (len == 1) {
+            // A surrogate pair does not fit, decode it aside and hand out one char at a time.
+            pair.clear();
+            decode(pair);
+            pair.flip();
+            return pair.hasRemaining() ? read(cbuf, off, len) : -1;
+        }
+
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        decode(out);
+        int n = out.position() - off;
+        return n == 0 && done ? -1 : n;
+    }
+
+    private void decode(CharBuffer out) {
+        while (!done && out.hasRemaining()) {
+            CoderResult result = decoder.decode(in, out, true);
+            if (result.isOverflow()) {
+                return;
+            }
+            if (decoder.flush(out).isOverflow()) {
+                return;
+            }
+            done = true;
+        }
+    }
+
+    @Override
+    public boolean ready() {
+        return pair.hasRemaining() || in.hasRemaining();
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -0,0 +1,34 @@
+package myhyuny.subtitle.io;
+
+import java.nio.charset.Charset;
+
+/**
+ * @author Hyunmin Kang
+ */
+public final class CharsetDetection {
+
+    private final Charset charset;
+    private final float confidence;
+
+    public CharsetDetection(Charset charset, float confidence) {
+        this.charset = charset;
+        this.confidence = confidence;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return from {@code 0} (a guess) to {@code 1} (byte order mark)
+     */
+    public float getConfidence() {
+        return confidence;
+    }
+
+    @Override
+    public String toString() {
+        return charset.name() + " (" + confidence + ')';
+    }
+
+}
@@ -0,0 +1,15 @@
+package myhyuny.subtitle.io;
+
+/**
+ * Guesses the charset of a text from a prefix of its bytes.
+ *
+ * @author Hyunmin Kang
+ */
+public interface CharsetDetector {
+
+    /**
+     * @return best guess, never {@code null}
+     */
+    CharsetDetection detect(byte[] bytes, int offset, int length);
+
+}
@@ -0,0 +1,374 @@
+package myhyuny.subtitle.io;
+
+import static java.nio.charset.StandardCharsets.UTF_16BE;
+import static java.nio.charset.StandardCharsets.UTF_16LE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.charset.Charset;
+
+/**
+ * Charset detector for subtitles. A byte order mark wins outright, otherwise UTF-16 is recognized from
+ * its zero bytes, and UTF-8, CP949, Shift_JIS, GB18030, Big5 and Windows-125x are scored by how well
+ * their byte sequences and common lead/trail byte pairs fit the sample.
+ * Candidates are tried in that order and a later one has to score higher to win.
+ *
+ * @author Hyunmin Kang
+ */
+public class DefaultCharsetDetector implements CharsetDetector {
+
+    /**
+     * Bytes worth reading from the head of a file.
+     */
+    public static final int SAMPLE_SIZE = 64 * 1024;
+
+    private static final Charset UTF_32BE = Charset.forName("UTF-32BE");
+    private static final Charset UTF_32LE = Charset.forName("UTF-32LE");
+    private static final Charset CP949 = Charset.forName("x-windows-949");
+    private static final Charset SHIFT_JIS = Charset.forName("windows-31j");
+    private static final Charset GB18030 = Charset.forName("GB18030");
+    private static final Charset BIG5 = Charset.forName("Big5");
+    private static final Charset WINDOWS_1250 = Charset.forName("windows-1250");
+    private static final Charset WINDOWS_1251 = Charset.forName("windows-1251");
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+    private static final Charset WINDOWS_1253 = Charset.forName("windows-1253");
+    private static final Charset WINDOWS_1254 = Charset.forName("windows-1254");
+
+    private static final float MINIMUM_CONFIDENCE = 0.2f;
+    private static final int INVALID_WEIGHT = 8;
+
+    private final Charset fallback;
+
+    /**
+     * @param fallback charset for plain ASCII and for samples nothing fits
+     */
+    public DefaultCharsetDetector(Charset fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public CharsetDetection detect(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+
+        if (length >= 4 && bytes[offset] == (byte) 0x00 && bytes[offset + 1] == (byte) 0x00 &&
+            bytes[offset + 2] == (byte) 0xFE && bytes[offset + 3] == (byte) 0xFF
+        ) {
+            return new CharsetDetection(UTF_32BE, 1.f);
+        } else if (length >= 3 && bytes[offset] == (byte) 0xEF && bytes[offset + 1] == (byte) 0xBB && bytes[offset + 2] == (byte) 0xBF) {
+            return new CharsetDetection(UTF_8, 1.f);
+        } else if (length >= 2 && bytes[offset] == (byte) 0xFE && bytes[offset + 1] == (byte) 0xFF) {
+            return new CharsetDetection(UTF_16BE, 1.f);
+        } else if (length >= 2 && bytes[offset] == (byte) 0xFF && bytes[offset + 1] == (byte) 0xFE) {
+            if (length >= 4 && bytes[offset + 2] == (byte) 0x00 && bytes[offset + 3] == (byte) 0x00) {
+                return new CharsetDetection(UTF_32LE, 1.f);
+            }
+            return new CharsetDetection(UTF_16LE, 1.f);
+        }
+
+        int high = 0, evenZero = 0, oddZero = 0;
+        for (int i = offset; i < end; i++) {
+            int c = bytes[i] & 0xFF;
+            if (c >= 0x80) {
+                high++;
+            } else if (c == 0x00) {
+                if (((i - offset) & 1) == 0) {
+                    evenZero++;
+                } else {
+                    oddZero++;
+                }
+            }
+        }
+
+        int units = length / 2;
+        if (units > 0) {
+            if (evenZero > units / 5 && oddZero <= units / 50) {
+                return new CharsetDetection(UTF_16BE, Math.min(1.f, (float) evenZero / units * 2));
+            }
+            if (oddZero > units / 5 && evenZero <= units / 50) {
+                return new CharsetDetection(UTF_16LE, Math.min(1.f, (float) oddZero / units * 2));
+            }
+        }
+
+        if (high == 0) {
+            return new CharsetDetection(fallback, 1.f);
+        }
+
+        CharsetDetection best = new CharsetDetection(fallback, 0.f);
+        best = better(best, UTF_8, utf8(bytes, offset, end));
+        best = better(best, CP949, cp949(bytes, offset, end));
+        best = better(best, SHIFT_JIS, shiftJis(bytes, offset, end));
+        best = better(best, GB18030, gb18030(bytes, offset, end));
+        best = better(best, BIG5, big5(bytes, offset, end));
+        best = better(best, singleByte(bytes, offset, end));
+
+        if (best.getConfidence() < MINIMUM_CONFIDENCE) {
+            return new CharsetDetection(fallback, best.getConfidence());
+        }
+        return best;
+    }
+
+    private static CharsetDetection better(CharsetDetection best, Charset charset, float confidence) {
+        return confidence > best.getConfidence() ? new CharsetDetection(charset, confidence) : best;
+    }
+
+    private static CharsetDetection better(CharsetDetection best, CharsetDetection detection) {
+        return detection.getConfidence() > best.getConfidence() ? detection : best;
+    }
+
+    /**
+     * Common pairs count fully, rare but valid ones a quarter, and invalid bytes weigh against both.
+     */
+    private static float confidence(int common, int rare, int invalid) {
+        int valid = common + rare;
+        if (valid == 0) {
+            return 0.f;
+        }
+        return (common + rare * 0.25f) / (valid + invalid * INVALID_WEIGHT);
+    }
+
+    private static boolean in(int c, int from, int to) {
+        return c >= from && c <= to;
+    }
+
+    private static float utf8(byte[] bytes, int offset, int end) {
+        int valid = 0, invalid = 0;
+        for (int i = offset; i < end; ) {
+            int c = bytes[i] & 0xFF;
+            if (c < 0x80) {
+                i++;
+                continue;
+            }
+
+            int n = in(c, 0xC2, 0xDF) ? 1 : in(c, 0xE0, 0xEF) ? 2 : in(c, 0xF0, 0xF4) ? 3 : -1;
+            if (n < 0) {
+                invalid++;
+                i++;
+                continue;
+            }
+            if (i + n >= end) {
+                break;
+            }
+
+            boolean ok = true;
+            for (int k = 1; k <= n; k++) {
+                if ((bytes[i + k] & 0xC0) != 0x80) {
+                    ok = false;
+                    break;
+                }
+            }
+            if (ok) {
+                valid++;
+                i += n + 1;
+            } else {
+                invalid++;
+                i++;
+            }
+        }
+        return confidence(valid, 0, invalid);
+    }
+
+    /**
+     * KS X 1001 Hangul ({@code B0A1-C8FE}) is common, the rest of CP949 is rare.
+     */
+    private static float cp949(byte[] bytes, int offset, int end) {
+        int common = 0, rare = 0, invalid = 0;
+        for (int i = offset; i < end; ) {
+            int c = bytes[i] & 0xFF;
+            if (c < 0x80) {
+                i++;
+                continue;
+            }
+            if (i + 1 >= end) {
+                break;
+            }
+
+            int t = bytes[i + 1] & 0xFF;
+            boolean valid = in(c, 0x81, 0xFE) && (c <= 0xC6
+                ? in(t, 0x41, 0x5A) || in(t, 0x61, 0x7A) || in(t, 0x81, 0xFE)
+                : in(t, 0xA1, 0xFE));
+            if (!valid) {
+                invalid++;
+                i++;
+                continue;
+            }
+
+            if (in(c, 0xB0, 0xC8) && in(t, 0xA1, 0xFE)) {
+                common++;
+            } else {
+                rare++;
+            }
+            i += 2;
+        }
+        return confidence(common, rare, invalid);
+    }
+
+    /**
+     * Punctuation, kana and level 1 kanji ({@code 8140-9FFC}) are common.
+     */
+    private static float shiftJis(byte[] bytes, int offset, int end) {
+        int common = 0, rare = 0, invalid = 0;
+        for (int i = offset; i < end; ) {
+            int c = bytes[i] & 0xFF;
+            if (c < 0x80) {
+                i++;
+                continue;
+            }
+            if (in(c, 0xA1, 0xDF)) {
+                rare++;
+                i++;
+                continue;
+            }
+            if (i + 1 >= end) {
+                break;
+            }
+
+            int t = bytes[i + 1] & 0xFF;
+            if (!(in(c, 0x81, 0x9F) || in(c, 0xE0, 0xFC)) || !(in(t, 0x40, 0x7E) || in(t, 0x80, 0xFC))) {
+                invalid++;
+                i++;
+                continue;
+            }
+
+            if (c <= 0x83 || in(c, 0x88, 0x9F)) {
+                common++;
+            } else {
+                rare++;
+            }
+            i += 2;
+        }
+        return confidence(common, rare, invalid);
+    }
+
+    /**
+     * GB2312 hanzi ({@code B0A1-F7FE}) are common. When none of them lies outside the range shared
+     * with KS X 1001 Hangul, the text is more likely Korean and the score is lowered.
+     */
+    private static float gb18030(byte[] bytes, int offset, int end) {
+        int common = 0, rare = 0, invalid = 0;
+        boolean hanzi = false;
+        for (int i = offset; i < end; ) {
+            int c = bytes[i] & 0xFF;
+            if (c < 0x80) {
+                i++;
+                continue;
+            }
+            if (i + 1 >= end) {
+                break;
+            }
+
+            int t = bytes[i + 1] & 0xFF;
+            if (!in(c, 0x81, 0xFE)) {
+                invalid++;
+                i++;
+            } else if (in(t, 0x30, 0x39)) {
+                if (i + 3 >= end) {
+                    break;
+                }
+                if (in(bytes[i + 2] & 0xFF, 0x81, 0xFE) && in(bytes[i + 3] & 0xFF, 0x30, 0x39)) {
+                    rare++;
+                    i += 4;
+                } else {
+                    invalid++;
+                    i++;
+                }
+            } else if (in(t, 0x40, 0x7E) || in(t, 0x80, 0xFE)) {
+                if (in(c, 0xB0, 0xF7) && in(t, 0xA1, 0xFE)) {
+                    common++;
+                    hanzi |= c > 0xC8;
+                } else {
+                    rare++;
+                }
+                i += 2;
+            } else {
+                invalid++;
+                i++;
+            }
+        }
+
+        float confidence = confidence(common, rare, invalid);
+        return hanzi ? confidence : confidence * 0.9f;
+    }
+
+    /**
+     * Level 1 hanzi ({@code A440-C67E}) are common. Big5 puts many trail bytes in {@code 40-7E},
+     * which KS X 1001 and GB2312 text never has, so a sample without them scores half.
+     */
+    private static float big5(byte[] bytes, int offset, int end) {
+        int common = 0, rare = 0, invalid = 0;
+        boolean lowTrail = false;
+        for (int i = offset; i < end; ) {
+            int c = bytes[i] & 0xFF;
+            if (c < 0x80) {
+                i++;
+                continue;
+            }
+            if (i + 1 >= end) {
+                break;
+            }
+
+            int t = bytes[i + 1] & 0xFF;
+            if (!in(c, 0xA1, 0xF9) || !(in(t, 0x40, 0x7E) || in(t, 0xA1, 0xFE))) {
+                invalid++;
+                i++;
+                continue;
+            }
+
+            lowTrail |= t <= 0x7E;
+            if (in(c, 0xA4, 0xC6)) {
+                common++;
+            } else {
+                rare++;
+            }
+            i += 2;
+        }
+
+        float confidence = confidence(common, rare, invalid);
+        return lowTrail ? confidence : confidence * 0.5f;
+    }
+
+    /**
+     * Letters of Cyrillic and Greek come in runs of high bytes, Latin accents mostly stand alone.
+     * Greek is told from Cyrillic by accented vowels ({@code DC-DF}) inside words, and Turkish and
+     * Central European from Western by the letters that differ between their code pages.
+     */
+    private static CharsetDetection singleByte(byte[] bytes, int offset, int end) {
+        int high = 0, run = 0, tonos = 0, turkish = 0, central = 0;
+        boolean previous = false;
+        for (int i = offset; i < end; i++) {
+            int c = bytes[i] & 0xFF;
+            if (c < 0x80) {
+                previous = false;
+                continue;
+            }
+
+            high++;
+            if (previous) {
+                run++;
+                if (in(c, 0xDC, 0xDF)) {
+                    tonos++;
+                }
+            }
+            previous = c >= 0xC0;
+
+            switch (c) {
+                case 0xD0: case 0xDD: case 0xDE: case 0xF0: case 0xFD: case 0xFE:
+                    turkish++;
+                    break;
+                case 0x8C: case 0x8F: case 0x9C: case 0x9F: case 0xA5: case 0xB3: case 0xB9:
+                    central++;
+                    break;
+            }
+        }
+
+        if (run * 2 > high) {
+            return new CharsetDetection(tonos * 30 > run ? WINDOWS_1253 : WINDOWS_1251, 0.5f);
+        }
+        if (turkish * 10 > high) {
+            return new CharsetDetection(WINDOWS_1254, 0.4f);
+        }
+        if (central * 20 > high) {
+            return new CharsetDetection(WINDOWS_1250, 0.4f);
+        }
+        return new CharsetDetection(WINDOWS_1252, 0.4f);
+    }
+
+}
@@ -1,5 +1,8 @@
 package myhyuny.subtitle.io;
 
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.CodingErrorAction.REPLACE;
+
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -7,6 +10,16 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 
 /**
  * @author Hyunmin Kang
@@ -27,6 +40,48 @@ public class IO {
         }
     }
 
+    public static int read(InputStream in, byte[] b) throws IOException {
+        int off = 0;
+        for (int len; off < b.length && (len = in.read(b, off, b.length - off)) != -1; ) {
+            off += len;
+        }
+        return off;
+    }
+
+    public static Reader newReader(ReadableByteChannel channel, Charset charset) {
+        return Channels.newReader(
+            channel, charset.newDecoder().onMalformedInput(REPLACE).onUnmappableCharacter(REPLACE), -1
+        );
+    }
+
+    /**
+     * Reader decoding a buffer that holds the whole input, such as a mapped file.
+     */
+    public static Reader newReader(ByteBuffer buffer, Charset charset) {
+        return new ByteBufferReader(
+            buffer, charset.newDecoder().onMalformedInput(REPLACE).onUnmappableCharacter(REPLACE)
+        );
+    }
+
+    /**
+     * Decodes the whole buffer at once, as {@link #newReader(ByteBuffer, Charset)} would.
+     */
+    public static CharBuffer decode(ByteBuffer buffer, Charset charset) throws CharacterCodingException {
+        return charset.newDecoder().onMalformedInput(REPLACE).onUnmappableCharacter(REPLACE).decode(buffer);
+    }
+
+    public static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            return channel.map(READ_ONLY, 0L, channel.size());
+        }
+    }
+
+    public static Writer newWriter(WritableByteChannel channel, Charset charset) {
+        return Channels.newWriter(
+            channel, charset.newEncoder().onMalformedInput(REPLACE).onUnmappableCharacter(REPLACE), -1
+        );
+    }
+
     public static void copy(InputStream in, OutputStream out) throws IOException {
         byte[] b = new byte[8192];
         for (int len; (len = in.read(b)) != -1; ) {